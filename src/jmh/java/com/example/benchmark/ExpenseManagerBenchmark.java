@@ -0,0 +1,113 @@
+package com.example.benchmark;
+
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.model.ExpenseStore;
+import com.example.utils.ExpenseFileHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Changes to the ledger and the aggregations over it, at three ledger sizes. The service converts with fixed
+ * rates, so the numbers do not depend on the network. The ledger is not loaded from a file, so changes are
+ * not journaled; see PersistenceBenchmark for the file side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpenseManagerBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private ExpenseManager manager;
+    private List<Expense> spares; // Expenses to add and edit with, so the ledger keeps its size.
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LedgerGenerator generator = new LedgerGenerator();
+        manager = new ExpenseManager(LedgerGenerator.createStubService(), new ExpenseFileHandler("benchmark.ledger"));
+        manager.addExpenses(generator.generate(rows));
+        spares = generator.generate(1024);
+        manager.calculateTotalExpensesByCategory(); // Fills the rate cache, as in a running tracker.
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.getService().close();
+    }
+
+    // A fresh copy of the next spare expense, since adding an expense gives it an id.
+    private Expense nextSpare() {
+        next = (next + 1) & 1023;
+        Expense spare = spares.get(next);
+        return new Expense(spare.getName(), spare.getDate(), spare.getCategory(), spare.getAmount(), spare.getCurrency());
+    }
+
+    // Adds an expense and removes the last one by index again, so every invocation sees the same ledger size.
+    @Benchmark
+    public boolean addAndRemoveExpense() {
+        manager.addExpense(nextSpare());
+        return manager.removeExpense(manager.readStore(ExpenseStore::size) - 1);
+    }
+
+    @Benchmark
+    public boolean editExpense() {
+        Expense expense = manager.getExpenseAt(next * 31 % rows);
+        return manager.editExpense(expense, nextSpare());
+    }
+
+    @Benchmark
+    public void groupByMonth(Blackhole blackhole) {
+        TreeMap<YearMonth, List<Expense>> grouped = manager.getExpensesGroupedByMonth();
+        for (List<Expense> month : grouped.values()) {
+            blackhole.consume(month.size());
+        }
+    }
+
+    // A scan of the category column, split across cores for large ledgers.
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int expensesByCategory() {
+        return manager.getExpensesByCategory("Groceries").size();
+    }
+
+    @Benchmark
+    public Map<String, Double> calculateTotals() {
+        return manager.calculateTotalExpensesByCategory();
+    }
+
+    @Benchmark
+    public Map<String, Double> calculateMonthTotals() {
+        return manager.calculateTotalExpensesByCategory(YearMonth.of(2021, 6));
+    }
+
+    // The full pass over every row that a load or a rate import does.
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void rebuildTotals() {
+        manager.rebuildTotals();
+    }
+}
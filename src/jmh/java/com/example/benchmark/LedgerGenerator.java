@@ -0,0 +1,66 @@
+package com.example.benchmark;
+
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.service.ExpenseService;
+import com.example.service.FixedRateProvider;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic ledgers for the benchmarks. The same seed always gives the same expenses, so numbers
+ * from before and after a change are measured on identical data.
+ */
+public class LedgerGenerator {
+    public static final long DEFAULT_SEED = 20231126L;
+
+    private static final String[] NAMES = {"Lunch", "Bus Ticket", "Cheese", "Rent", "Electricity", "Cinema",
+            "Groceries", "Coffee", "Train", "Books", "Internet", "Dinner", "Taxi", "Gym", "Concert", "Bakery"};
+    private static final String[] CURRENCIES = {"HUF", "JOD", "EUR", "USD", "GBP", "JPY"};
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final LocalDate FIRST_DAY = LocalDate.of(2019, 1, 1);
+    private static final int DAYS = 5 * 365; // Five years, so there are about 60 months.
+
+    private final Random random;
+
+    public LedgerGenerator() {
+        this(DEFAULT_SEED);
+    }
+
+    public LedgerGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public Expense nextExpense() {
+        String name = NAMES[random.nextInt(NAMES.length)];
+        String date = FIRST_DAY.plusDays(random.nextInt(DAYS)).format(FORMATTER);
+        String category = ExpenseManager.CATEGORIES[random.nextInt(ExpenseManager.CATEGORIES.length)];
+        double amount = Math.round(random.nextDouble() * 100000) / 100.0;
+        return new Expense(name, date, category, amount, CURRENCIES[random.nextInt(CURRENCIES.length)]);
+    }
+
+    public List<Expense> generate(int count) {
+        List<Expense> expenses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            expenses.add(nextExpense());
+        }
+        return expenses;
+    }
+
+    // A service that converts with fixed rates instead of calling the API, so no network or key is needed.
+    public static ExpenseService createStubService() {
+        Map<String, Double> ratesFromJod = new HashMap<>();
+        ratesFromJod.put("HUF", 510.0);
+        ratesFromJod.put("EUR", 1.30);
+        ratesFromJod.put("USD", 1.41);
+        ratesFromJod.put("GBP", 1.12);
+        ratesFromJod.put("JPY", 210.0);
+        return new ExpenseService(new FixedRateProvider("JOD", ratesFromJod));
+    }
+}
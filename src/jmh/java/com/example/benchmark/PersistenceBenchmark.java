@@ -0,0 +1,84 @@
+package com.example.benchmark;
+
+import com.example.model.ExpenseStore;
+import com.example.utils.ExpenseFileHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Saving and loading the ledger file through ExpenseFileHandler, at three ledger sizes. Each trial works in
+ * its own temporary directory. Numbers include the page cache, so they show the cost of the format and the
+ * code rather than of the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private Path directory;
+    private ExpenseFileHandler fileHandler;
+    private ExpenseStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ledger-benchmark");
+        fileHandler = new ExpenseFileHandler(directory.resolve("expenses.ledger").toString());
+        store = new ExpenseStore();
+        store.ensureCapacity(rows);
+        LedgerGenerator generator = new LedgerGenerator();
+        for (int i = 0; i < rows; i++) {
+            store.add(generator.nextExpense());
+        }
+        fileHandler.saveLedger(store);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (fileHandler.getJournal() != null) {
+            fileHandler.getJournal().close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    // A full snapshot, as written by Save or by a compaction.
+    @Benchmark
+    public void saveLedger() throws IOException {
+        fileHandler.saveLedger(store);
+    }
+
+    @Benchmark
+    public int loadLedger() throws IOException, ClassNotFoundException {
+        return fileHandler.loadLedger(new ExpenseStore());
+    }
+
+    // The read-only load of the reports, which replays the journal but opens nothing for writing.
+    @Benchmark
+    public int readLedger() throws IOException, ClassNotFoundException {
+        return fileHandler.readLedger(new ExpenseStore());
+    }
+}
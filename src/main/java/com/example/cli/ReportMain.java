@@ -0,0 +1,189 @@
+package com.example.cli;
+
+import com.example.model.ExpenseManager;
+import com.example.model.ExpenseStore;
+import com.example.service.ExpenseService;
+import com.example.service.HistoricalRateStore;
+import com.example.service.HttpRateProvider;
+import com.example.service.StoredRateProvider;
+import com.example.utils.ExpenseFileHandler;
+import com.example.utils.LedgerExporter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A command line entry point for reports on servers and in scripts. Unlike Main, it does not touch AWT or
+ * Swing at all, so it needs no display and starts in a fraction of the time and memory. The ledger is read
+ * without changing any file, so a report can run while the tracker has the same ledger open.
+ * <p>
+ * Without an API key in {@value HttpRateProvider#API_KEY_VARIABLE}, the report never goes online: expenses in
+ * other currencies are converted with the rates of the {@code --rates} file only, and a missing rate fails the
+ * report with a hint instead of a network error.
+ * <p>
+ * Usage: {@code java -cp expense-tracker.jar com.example.cli.ReportMain [options] [command]}, see {@link #USAGE}.
+ */
+public class ReportMain {
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: ReportMain [--file <ledger>] [--rates <exchange_rates.dat>] [command]",
+            "Commands:",
+            "  summary                     the number of expenses and the months they cover (default)",
+            "  totals [yyyy-MM]            totals per category in " + ExpenseManager.BASE_CURRENCY + ", overall or for one month",
+            "  months                      the number of expenses and the total per month",
+            "  export <file> [--month yyyy-MM] [--category <name>]",
+            "                              CSV or JSON by file name, gzipped if it ends with .gz",
+            "Options:",
+            "  --file <ledger>             the ledger to read (default: expenses.ledger)",
+            "  --rates <file>              convert with the stored rate of each expense's date where there is one;",
+            "                              without " + HttpRateProvider.API_KEY_VARIABLE + ", the only rates that are used");
+
+    public static void main(String[] args) {
+        int status = run(args, System.out, System.err);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Runs a command and returns the exit status: 0 on success, 1 for invalid arguments, 2 if the ledger could
+     * not be read or the report failed.
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        String fileName = null;
+        Path ratesFile = null;
+        YearMonth month = null;
+        String category = null;
+        List<String> command = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--file":
+                        fileName = value(args, ++i);
+                        break;
+                    case "--rates":
+                        ratesFile = Paths.get(value(args, ++i));
+                        break;
+                    case "--month":
+                        month = YearMonth.parse(value(args, ++i));
+                        break;
+                    case "--category":
+                        category = value(args, ++i);
+                        break;
+                    case "-h":
+                    case "--help":
+                        out.println(USAGE);
+                        return 0;
+                    default:
+                        command.add(args[i]);
+                }
+            }
+            if (command.isEmpty()) {
+                command.add("summary");
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 1;
+        }
+
+        boolean online = System.getenv(HttpRateProvider.API_KEY_VARIABLE) != null;
+        try {
+            HistoricalRateStore rates = ratesFile == null ? null : new HistoricalRateStore(ratesFile, ExpenseManager.BASE_CURRENCY);
+            return report(command, fileName, rates, online, month, category, out);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 1;
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            // A failed rate lookup comes out of the totals as an UncheckedIOException around the IOException.
+            err.println("The report failed: " + (e instanceof UncheckedIOException ? e.getCause() : e).getMessage());
+            if (!online && e instanceof UncheckedIOException) {
+                err.println("No exchange rate API key is set in " + HttpRateProvider.API_KEY_VARIABLE
+                        + ", so only stored rates can be used; pass them with --rates <exchange_rates.dat>.");
+            }
+            return 2;
+        }
+    }
+
+    private static int report(List<String> command, String fileName, HistoricalRateStore rates, boolean online,
+                              YearMonth month, String category, PrintStream out) throws IOException, ClassNotFoundException {
+        // Without a key, the stored rates stand in for the API, so a report needs neither a key nor a network.
+        try (ExpenseService service = online ? new ExpenseService() : new ExpenseService(new StoredRateProvider(rates))) {
+            service.setHistoricalRateStore(rates);
+            ExpenseManager manager = new ExpenseManager(service, fileName == null ? new ExpenseFileHandler() : new ExpenseFileHandler(fileName));
+            manager.readExpenses();
+            switch (command.get(0)) {
+                case "summary":
+                    printSummary(manager, out);
+                    return 0;
+                case "totals":
+                    printTotals(manager, command.size() > 1 ? YearMonth.parse(command.get(1)) : null, out);
+                    return 0;
+                case "months":
+                    printMonths(manager, out);
+                    return 0;
+                case "export":
+                    if (command.size() < 2) {
+                        throw new IllegalArgumentException("export needs a file name");
+                    }
+                    export(manager, Paths.get(command.get(1)), month, category, out);
+                    return 0;
+                default:
+                    throw new IllegalArgumentException("Unknown command: " + command.get(0));
+            }
+        }
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static void printSummary(ExpenseManager manager, PrintStream out) {
+        out.println("Expenses: " + manager.readStore(ExpenseStore::size));
+        if (!manager.getMonths().isEmpty()) {
+            out.println("Months: " + manager.getMonths().size() + " (" + manager.getMonths().first() + " to " + manager.getMonths().last() + ")");
+        }
+    }
+
+    private static void printTotals(ExpenseManager manager, YearMonth month, PrintStream out) {
+        Map<String, Double> totals = month == null ? manager.calculateTotalExpensesByCategory() : manager.calculateTotalExpensesByCategory(month);
+        double overall = 0;
+        for (String category : ExpenseManager.CATEGORIES) {
+            double total = totals.getOrDefault(category, 0.0);
+            overall += total;
+            out.printf("%-15s %15.2f%n", category, total);
+        }
+        out.printf("%-15s %15.2f %s%n", "Overall", overall, ExpenseManager.BASE_CURRENCY);
+    }
+
+    private static void printMonths(ExpenseManager manager, PrintStream out) {
+        for (YearMonth month : manager.getMonths()) {
+            double total = 0;
+            for (double categoryTotal : manager.calculateTotalExpensesByCategory(month).values()) {
+                total += categoryTotal;
+            }
+            out.printf("%s %8d %15.2f %s%n", month, manager.getExpenseCount(month), total, ExpenseManager.BASE_CURRENCY);
+        }
+    }
+
+    private static void export(ExpenseManager manager, Path file, YearMonth month, String category, PrintStream out) throws IOException {
+        if (month != null && category != null) {
+            throw new IllegalArgumentException("Export either a month or a category");
+        }
+        LedgerExporter.Slice slice = month != null ? LedgerExporter.Slice.month(month)
+                : category != null ? LedgerExporter.Slice.category(category) : LedgerExporter.Slice.all();
+        long rows = new LedgerExporter().export(manager, slice, LedgerExporter.formatOf(file), file, false, null);
+        out.println("Exported " + rows + " expenses (" + slice + ") to " + file);
+    }
+}
@@ -2,19 +2,27 @@ package com.example.controller;
 
 import com.example.model.Expense;
 import com.example.model.ExpenseManager;
+import com.example.utils.AutoSaveScheduler;
+import com.example.utils.CsvImporter;
+import com.example.utils.LedgerExporter;
 import com.example.view.GUI;
 
 import javax.swing.*;
 import java.awt.*;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.YearMonth;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.TreeMap;
 
 public class ExpenseController {
     public ExpenseManager expenseManager;
     private GUI gui;
+    private AutoSaveScheduler autoSaver;
 
     public final String[] CATEGORIES = {"Food", "Rent", "Groceries", "Utilities", "Transportation", "Entertainment", "Other"};
     public final String[] CURRENCIES = {
@@ -69,10 +77,49 @@ public class ExpenseController {
         }
     }
 
+    /**
+     * Converts an expense on a background thread while a dialog with a progress bar is shown, so the window keeps
+     * repainting while the exchange rate is fetched. Called on the event thread; returns once the conversion is
+     * done, or false if the user cancelled it.
+     */
+    private boolean convertInBackground(Expense expense, String targetCurrency) {
+        JProgressBar progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        JOptionPane pane = new JOptionPane(new Object[]{"Converting to " + targetCurrency + "...", progressBar},
+                JOptionPane.INFORMATION_MESSAGE, JOptionPane.DEFAULT_OPTION, null, new Object[]{"Cancel"});
+        JDialog dialog = pane.createDialog(gui, "Currency Conversion");
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                convertExpenseCurrency(expense, targetCurrency);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                dialog.dispose();
+            }
+        };
+        worker.execute();
+        // done() runs on this thread, so it cannot dispose the dialog before it is shown.
+        if (!worker.isDone()) {
+            dialog.setVisible(true); // Blocks until done() closes it or the user cancels, while events keep flowing.
+        }
+        if (!worker.isDone()) {
+            worker.cancel(true);
+            return false;
+        }
+        return true;
+    }
+
     public Map<String, Double> calculateTotalExpensesByCategory() {
         return expenseManager.calculateTotalExpensesByCategory();
     }
 
+    public Map<String, Double> calculateTotalExpensesByCategory(YearMonth yearMonth) {
+        return expenseManager.calculateTotalExpensesByCategory(yearMonth);
+    }
+
     public List<Expense> getAllExpenses() {
         return expenseManager.getAllExpenses();
     }
@@ -81,22 +128,67 @@ public class ExpenseController {
         return expenseManager.loadExpenses();
     }
 
+    // Loads the ledger page by page; see ExpenseManager.loadExpenses(LoadListener).
+    public List<Expense> loadExpenses(ExpenseManager.LoadListener listener) throws IOException, ClassNotFoundException {
+        return expenseManager.loadExpenses(listener);
+    }
+
     public void saveExpenses() throws IOException {
         expenseManager.saveExpenses();
     }
 
+    // Saves on the autosave thread, so the event thread is not blocked while the file is written.
+    public CompletableFuture<Void> saveExpensesInBackground() {
+        if (autoSaver != null) {
+            return autoSaver.saveNow();
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            saveExpenses();
+            result.complete(null);
+        } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    // Imports a CSV file in one batch. This does not touch the GUI, so it can run on a background thread.
+    public CsvImporter.Result importCsv(Path file) throws IOException {
+        return new CsvImporter().importInto(file, expenseManager);
+    }
+
+    // Exports a slice of the ledger; the format follows the file name (.csv or .json, optionally with .gz).
+    public long exportExpenses(Path file, LedgerExporter.Slice slice, LedgerExporter.ProgressListener listener) throws IOException {
+        return new LedgerExporter().export(expenseManager, slice, LedgerExporter.formatOf(file), file, false, listener);
+    }
+
+    public void setAutoSaver(AutoSaveScheduler autoSaver) {
+        this.autoSaver = autoSaver;
+    }
+
     public TreeMap<YearMonth, List<Expense>> getExpensesGroupedByMonth() {
         return expenseManager.getExpensesGroupedByMonth();
     }
 
+    public NavigableSet<YearMonth> getMonths() {
+        return expenseManager.getMonths();
+    }
+
+    public List<Expense> getExpensesForMonth(YearMonth yearMonth) {
+        return expenseManager.getExpensesForMonth(yearMonth);
+    }
+
     public boolean addExpense(String name, String date, String category, String amount, String currency) {
+        if (ledgerIsLoading()) {
+            return false;
+        }
         try {
             double amountValue = Double.parseDouble(amount);
             Expense newExpense = new Expense(name, date, category, amountValue, currency);
             expenseManager.addExpense(newExpense);
             gui.updateMonthComboBox();
             // Update the JTable.
-            gui.tableModel.addRow(new Object[]{name, date, category, amountValue, currency});
+            gui.tableModel.expenseAdded(newExpense);
             if (gui.totalsPanelVisible) gui.updateTotalExpensesByCategoryDisplay();
             return true;
         } catch (NumberFormatException e) {
@@ -108,21 +200,52 @@ public class ExpenseController {
         }
     }
 
+    // The manager refuses changes while a ledger is loaded in the background, so the user is told instead.
+    private boolean ledgerIsLoading() {
+        if (expenseManager.isLoading()) {
+            JOptionPane.showMessageDialog(gui, "The expenses are still being loaded. Please try again in a moment.", "Loading", JOptionPane.INFORMATION_MESSAGE);
+            return true;
+        }
+        return false;
+    }
+
     public void removeSelectedExpense() {
-        int selectedRow = gui.expensesTable.getSelectedRow();
-        if (selectedRow != -1) {
+        int[] selectedRows = gui.expensesTable.getSelectedRows();
+        if (selectedRows.length > 0) {
+            if (ledgerIsLoading()) {
+                return;
+            }
             int response = JOptionPane.showConfirmDialog(gui, // Confirmation message.
-                    "Are you sure you want to delete the selected expense?",
+                    selectedRows.length == 1 ? "Are you sure you want to delete the selected expense?"
+                            : "Are you sure you want to delete the " + selectedRows.length + " selected expenses?",
                     "Confirm Deletion",
                     JOptionPane.YES_NO_OPTION,
                     JOptionPane.WARNING_MESSAGE);
 
             if (response == JOptionPane.YES_OPTION) {
-                int modelIndex = gui.expensesTable.convertRowIndexToModel(selectedRow);
-                if (expenseManager.removeExpense(modelIndex)) {
-                    gui.tableModel.removeRow(modelIndex);
-                    gui.updateMonthComboBox();
-                    if (gui.totalsPanelVisible) gui.updateTotalExpensesByCategoryDisplay();
+                // The table model holds the whole ledger and filters are only applied by the sorter, so the
+                // model index is the row of the ledger.
+                if (selectedRows.length == 1) {
+                    int modelIndex = gui.expensesTable.convertRowIndexToModel(selectedRows[0]);
+                    Expense selected = expenseManager.getExpenseAt(modelIndex);
+                    if (selected != null && expenseManager.removeById(selected.getId())) {
+                        gui.tableModel.expenseRemoved(modelIndex);
+                        gui.updateMonthComboBox();
+                        if (gui.totalsPanelVisible) gui.updateTotalExpensesByCategoryDisplay();
+                    }
+                    return;
+                }
+                // The rows are resolved to ids first, since every removal moves another row.
+                long[] ids = new long[selectedRows.length];
+                int count = 0;
+                for (int selectedRow : selectedRows) {
+                    Expense selected = expenseManager.getExpenseAt(gui.expensesTable.convertRowIndexToModel(selectedRow));
+                    if (selected != null) {
+                        ids[count++] = selected.getId();
+                    }
+                }
+                if (expenseManager.removeByIds(Arrays.copyOf(ids, count)) > 0) {
+                    gui.refreshAll(); // One refresh of the whole table instead of an event per removed row.
                 }
             }
         } else {
@@ -134,22 +257,21 @@ public class ExpenseController {
     public void editSelectedExpense() {
         int selectedRow = gui.expensesTable.getSelectedRow();
         if (selectedRow != -1) {
-            // Determine if a month is selected and get the corresponding list of expenses
-            YearMonth selectedMonth = (YearMonth) gui.monthComboBox.getSelectedItem();
-            List<Expense> relevantExpenses = selectedMonth == null ? getAllExpenses() : getExpensesGroupedByMonth().get(selectedMonth);
-
-            if (relevantExpenses != null && !relevantExpenses.isEmpty()) {
-                int modelIndex = gui.expensesTable.convertRowIndexToModel(selectedRow);
-                if (modelIndex < relevantExpenses.size()) {
-                    Expense oldExpense = relevantExpenses.get(modelIndex);
-                    Expense newExpense = getUpdatedExpenseFromUser(oldExpense); // This method gets the updated expense from the user
-
-                    if (newExpense != null) {
-                        expenseManager.editExpense(oldExpense, newExpense);
-                        gui.updateTableRow(newExpense, modelIndex);
-                        gui.updateMonthComboBox();
-                        if (gui.totalsPanelVisible) gui.updateTotalExpensesByCategoryDisplay();
-                    }
+            if (ledgerIsLoading()) {
+                return;
+            }
+            // The model index is the row of the ledger, whichever month is selected.
+            int modelIndex = gui.expensesTable.convertRowIndexToModel(selectedRow);
+            Expense oldExpense = expenseManager.getExpenseAt(modelIndex);
+
+            if (oldExpense != null) {
+                Expense newExpense = getUpdatedExpenseFromUser(oldExpense); // This method gets the updated expense from the user
+
+                if (newExpense != null) {
+                    expenseManager.replaceById(oldExpense.getId(), newExpense);
+                    gui.updateTableRow(newExpense, modelIndex);
+                    gui.updateMonthComboBox();
+                    if (gui.totalsPanelVisible) gui.updateTotalExpensesByCategoryDisplay();
                 }
             }
         } else {
@@ -187,7 +309,9 @@ public class ExpenseController {
                 double amountValue = Double.parseDouble(amountField.getText());
                 Expense updatedExpense = new Expense(nameField.getText(), dateField.getText(), (String) categoryComboBox.getSelectedItem(), amountValue, existingExpense.getCurrency());
                 String chosenCurrency = (String) currencyComboBox.getSelectedItem();
-                this.convertExpenseCurrency(updatedExpense, chosenCurrency);
+                if (chosenCurrency != null && !chosenCurrency.equals(updatedExpense.getCurrency())) {
+                    return convertInBackground(updatedExpense, chosenCurrency) ? updatedExpense : null;
+                }
                 return updatedExpense;
             } catch (NumberFormatException e) {
                 JOptionPane.showMessageDialog(null, "Invalid amount format", "Invalid Input", JOptionPane.ERROR_MESSAGE);
@@ -0,0 +1,106 @@
+package com.example.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running totals of a set of expenses per category, kept up to date one expense at a time.
+ * Amounts stay in their own currency until the totals are read, so adding or removing an
+ * expense never needs an exchange rate, and reading costs one conversion per currency used.
+ * Amounts that were already converted with a historical rate are kept in a separate base-currency sum.
+ */
+public class CategoryTotals {
+    private final int categoryCount;
+    private final Map<String, double[]> sumsByCurrency = new HashMap<>(); // currency -> sum per category ordinal
+    private final Map<String, Integer> countsByCurrency = new HashMap<>(); // Expenses in sumsByCurrency, per currency.
+    private final double[] baseSums; // Amounts already converted to the base currency, per category ordinal.
+    private final int[] counts;
+
+    public CategoryTotals(int categoryCount) {
+        this.categoryCount = categoryCount;
+        this.baseSums = new double[categoryCount];
+        this.counts = new int[categoryCount];
+    }
+
+    /**
+     * @param category   the category ordinal
+     * @param currency   the currency of the amount
+     * @param amount     the amount in its own currency
+     * @param baseAmount the amount already converted to the base currency, or NaN if it still has to be converted
+     */
+    public void add(int category, String currency, double amount, double baseAmount) {
+        if (Double.isNaN(baseAmount)) {
+            sumsByCurrency.computeIfAbsent(currency, c -> new double[categoryCount])[category] += amount;
+            countsByCurrency.merge(currency, 1, Integer::sum);
+        } else {
+            baseSums[category] += baseAmount;
+        }
+        counts[category]++;
+    }
+
+    // Takes an expense back out, with the same values it was added with.
+    public void remove(int category, String currency, double amount, double baseAmount) {
+        if (Double.isNaN(baseAmount)) {
+            double[] sums = sumsByCurrency.get(currency);
+            if (sums != null) {
+                sums[category] -= amount;
+                // A currency without expenses is dropped, so reading the totals does not look up its rate any more.
+                if (countsByCurrency.merge(currency, -1, Integer::sum) == 0) {
+                    sumsByCurrency.remove(currency);
+                    countsByCurrency.remove(currency);
+                }
+            }
+        } else {
+            baseSums[category] -= baseAmount;
+        }
+        counts[category]--;
+        if (counts[category] == 0) {
+            // Nothing is left in this category, so reset it instead of letting rounding errors build up.
+            baseSums[category] = 0;
+            for (double[] sums : sumsByCurrency.values()) {
+                sums[category] = 0;
+            }
+        }
+    }
+
+    // A copy that can be converted on another thread while this one keeps changing.
+    public CategoryTotals copy() {
+        CategoryTotals copy = new CategoryTotals(categoryCount);
+        for (Map.Entry<String, double[]> sums : sumsByCurrency.entrySet()) {
+            copy.sumsByCurrency.put(sums.getKey(), sums.getValue().clone());
+        }
+        copy.countsByCurrency.putAll(countsByCurrency);
+        System.arraycopy(baseSums, 0, copy.baseSums, 0, categoryCount);
+        System.arraycopy(counts, 0, copy.counts, 0, categoryCount);
+        return copy;
+    }
+
+    public void clear() {
+        sumsByCurrency.clear();
+        countsByCurrency.clear();
+        Arrays.fill(baseSums, 0);
+        Arrays.fill(counts, 0);
+    }
+
+    public int getCount(int category) {
+        return counts[category];
+    }
+
+    public int getTotalCount() {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public double getBaseSum(int category) {
+        return baseSums[category];
+    }
+
+    // The currencies that still have to be converted when the totals are read.
+    public Map<String, double[]> getSumsByCurrency() {
+        return sumsByCurrency;
+    }
+}
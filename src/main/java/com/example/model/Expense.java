@@ -10,11 +10,13 @@ import java.util.List;
 import java.util.Objects;
 
 public class Expense implements Serializable { // To allow for serialization.
+    private static final long serialVersionUID = -3096445366850082913L; // Fixed, so files saved by earlier versions still load.
     private String name;
     private String date;
     private String category;
     private double amount;
     private String currency;
+    private long id; // Assigned by the ExpenseStore the expense is added to; 0 until then.
 
     private static final List<String> allowedCategoryNames = Arrays.asList("food", "rent", "groceries", "utilities", "transportation", "entertainment", "other");
 
@@ -29,6 +31,30 @@ public class Expense implements Serializable { // To allow for serialization.
         setCurrency(currency);
     }
 
+    // Used by ExpenseStore to rebuild an expense from values that were already validated when it was first created.
+    static Expense restore(long id, String name, String date, String category, double amount, String currency) {
+        Expense expense = new Expense();
+        expense.id = id;
+        expense.name = name;
+        expense.date = date;
+        expense.category = category;
+        expense.amount = amount;
+        expense.currency = currency;
+        return expense;
+    }
+
+    // The stable id of the expense in its ledger, or 0 if it has not been added to one.
+    public long getId() {
+        return id;
+    }
+
+    void setId(long id) {
+        this.id = id;
+    }
+
+    private Expense() {
+    }
+
     public String getCurrency() {
         return currency;
     }
@@ -46,6 +72,11 @@ public class Expense implements Serializable { // To allow for serialization.
         }
     }
 
+    // Returns the position of a category in the predefined list, ignoring case, or -1 if it is not allowed.
+    public static int categoryOrdinal(String category) {
+        return category == null ? -1 : allowedCategoryNames.indexOf(category.toLowerCase());
+    }
+
     // Typical getters and setters.
     public String getName() {
         return name;
@@ -94,7 +125,7 @@ public class Expense implements Serializable { // To allow for serialization.
     }
 
 
-    // Equals and hashCode methods for proper comparison.
+    // Equals and hashCode methods for proper comparison. The id is left out, so two expenses with the same values are equal.
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -2,68 +2,292 @@ package com.example.model;
 
 import com.example.service.ExpenseService;
 import com.example.utils.ExpenseFileHandler;
+import com.example.utils.LatencyHistogram;
+import com.example.utils.LedgerFile;
+import com.example.utils.LedgerJournal;
+import com.example.utils.Metrics;
+import com.example.utils.jfr.AggregationEvent;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
+/**
+ * The ledger, its running totals and its month index, safe to use from many threads at once.
+ * <p>
+ * Writers are serialized by the lock of the manager, which they hold for the whole change including the journal,
+ * so a save on another thread sees a consistent ledger. Loads and saves do their file I/O without it, so they never
+ * stall an edit for longer than one page or one copy: a save only captures the ledger under it and writes afterwards,
+ * and a load only holds it while it appends a page. Changes are refused while a load is replacing the ledger. Inside that, the columns and indexes are only changed
+ * under the write lock of a StampedLock. Readers never take the lock of the manager: lookups and scans of the
+ * columns read optimistically and only take the read lock if a writer got in between, while the month index
+ * and totals are read under the read lock, which is only held for as long as a copy takes. So a long save or
+ * import never stalls the readers, and readers never stall an edit for longer than such a copy.
+ * <p>
+ * Nothing live is handed out: {@link #getAllExpenses()} returns a copy, and code that reads the columns of a large
+ * ledger, such as the table, does so through {@link #readStore}, which follows the same optimistic protocol.
+ */
 public class ExpenseManager {
+    // The categories in the same order as their ordinals in Expense.
+    public static final String[] CATEGORIES = {"Food", "Rent", "Groceries", "Utilities", "Transportation", "Entertainment", "Other"};
+    public static final String BASE_CURRENCY = "JOD"; // The currency totals are reported in.
+    private static final LatencyHistogram TOTALS_LATENCY = Metrics.getDefault().histogram("manager.totals");
+    private static final LatencyHistogram MONTH_TOTALS_LATENCY = Metrics.getDefault().histogram("manager.monthTotals");
+    private static final LatencyHistogram CATEGORY_FILTER_LATENCY = Metrics.getDefault().histogram("manager.byCategory");
+    private static final LatencyHistogram GROUP_BY_MONTH_LATENCY = Metrics.getDefault().histogram("manager.groupByMonth");
+    private static final LatencyHistogram REBUILD_LATENCY = Metrics.getDefault().histogram("manager.rebuildTotals");
+    private static final int PARALLEL_THRESHOLD = 1 << 16; // Below this many rows, a scan is quicker on one thread.
+
     public final ExpenseService service;
     private final ExpenseFileHandler fileHandler;
-    private final List<Expense> expenses;
-    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy"); // Allowed date-time format.
+    private final ExpenseStore store; // Column-oriented storage, see ExpenseStore.
+    private final List<Expense> expenses; // A read-only view of the store.
+    private final CategoryTotals totals = new CategoryTotals(CATEGORIES.length); // Kept up to date by every mutation.
+    private final MonthIndex monthIndex = new MonthIndex(CATEGORIES.length); // Also kept up to date by every mutation.
+    private volatile Runnable changeListener; // Told about every change, e.g. to schedule an autosave.
+    private final StampedLock lock = new StampedLock(); // Guards the columns and indexes, see the class comment.
+    private final Object fileLock = new Object(); // Lets one load or save at a time do its I/O, without the lock of the manager.
+    private boolean loading; // Set while a load replaces the ledger; guarded by the lock of the manager.
 
     public ExpenseManager(ExpenseService service, ExpenseFileHandler fileHandler) {
-        expenses = new LinkedList<>();
+        store = new ExpenseStore();
+        expenses = store.asList();
         if (service == null) {
             throw new IllegalArgumentException("ExpenseService cannot be null");
         }
         this.service = service;
         this.fileHandler = fileHandler;
-    } // Storing all expenses in a linked list.
+    } // Storing all expenses in columns of primitive arrays.
 
-    public boolean addExpense(Expense expense) {
+    // Changes are made while holding the lock of the manager, so that a save on another thread sees a consistent ledger.
+    public synchronized boolean addExpense(Expense expense) {
+        checkNotLoading();
         if (expense != null) {
-            expenses.add(expense);
+            int row;
+            double baseAmount = historicalBaseAmount(expense); // Also rejects an invalid date before anything is changed.
+            long stamp = lock.writeLock();
+            try {
+                row = store.add(expense);
+                indexRow(row, baseAmount);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            journalPut(row);
+            fireChanged();
             return true;
         }
         return false;
     }
 
-    public boolean removeExpense(int index) {
+    /**
+     * Adds many expenses as one batch, e.g. from an import: the columns grow once, and listeners are told
+     * about the change once instead of once per row.
+     *
+     * @return the number of expenses that were added
+     */
+    public synchronized int addExpenses(List<Expense> newExpenses) {
+        checkNotLoading();
+        int added = 0;
+        int firstRow = store.size();
+        long stamp = lock.writeLock();
+        try {
+            store.ensureCapacity(store.size() + newExpenses.size());
+            for (Expense expense : newExpenses) {
+                if (expense != null) {
+                    double baseAmount = historicalBaseAmount(expense);
+                    int row = store.add(expense);
+                    indexRow(row, baseAmount);
+                    added++;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        // Journalled after the lock is released, like a single add, so readers do not wait for the disk. The new
+        // rows are the last ones, and no other writer can move them while this method holds the monitor.
+        for (int row = firstRow; row < firstRow + added; row++) {
+            journalPut(row);
+        }
+        if (added > 0) {
+            fireChanged();
+        }
+        return added;
+    }
+
+    public synchronized boolean removeExpense(int index) {
         // Check if the index is within the valid range and non-negative
-        if (index < 0 || index >= expenses.size()) {
+        if (index < 0 || index >= store.size()) {
             return false;
         }
         // Remove the expense at the specified index
-        expenses.remove(index);
+        return removeById(store.getId(index));
+    }
+
+    // Removes the expense with the given id. The id is looked up in a hash index, so this does not depend on the size of the ledger.
+    public synchronized boolean removeById(long id) {
+        checkNotLoading();
+        int row = store.rowOf(id);
+        if (row < 0) {
+            return false;
+        }
+        long stamp = lock.writeLock();
+        try {
+            unindexRow(row);
+            store.remove(row);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        journalRemove(id);
+        fireChanged();
         return true;
     }
 
+    /**
+     * Removes many expenses as one batch, e.g. a multi-row selection: listeners are told about the change once
+     * instead of once per expense. Ids that are not in the ledger are skipped.
+     *
+     * @return the number of expenses that were removed
+     */
+    public synchronized int removeByIds(long[] ids) {
+        checkNotLoading();
+        int removed = 0;
+        long[] removedIds = new long[ids.length];
+        BitSet rows = new BitSet();
+        long stamp = lock.writeLock();
+        try {
+            for (long id : ids) {
+                int row = store.rowOf(id);
+                if (row >= 0 && !rows.get(row)) {
+                    unindexRow(row);
+                    rows.set(row);
+                    removedIds[removed++] = id;
+                }
+            }
+            store.removeRows(rows); // One pass, instead of moving the later rows up once per removed row.
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        for (int i = 0; i < removed; i++) { // Journalled after the lock is released, like a single removal.
+            journalRemove(removedIds[i]);
+        }
+        if (removed > 0) {
+            fireChanged();
+        }
+        return removed;
+    }
+
+    // Replaces the expense with the given id; the new expense takes over the id.
+    public synchronized boolean replaceById(long id, Expense newExpense) {
+        checkNotLoading();
+        int row = store.rowOf(id);
+        if (row < 0 || newExpense == null) {
+            return false;
+        }
+        double baseAmount = historicalBaseAmount(newExpense);
+        long stamp = lock.writeLock();
+        try {
+            unindexRow(row);
+            try {
+                store.set(row, newExpense);
+            } catch (RuntimeException e) {
+                indexRow(row, store.getBaseAmount(row)); // The row was left as it was, so it is counted again.
+                throw e;
+            }
+            indexRow(row, baseAmount);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        journalPut(row);
+        fireChanged();
+        return true;
+    }
+
+    // Returns a copy of the expense with the given id, or null if there is none.
+    public Expense getExpenseById(long id) {
+        return readOptimistically(() -> {
+            int row = store.rowOf(id);
+            return row < 0 ? null : store.get(row);
+        });
+    }
+
+    /**
+     * Runs a read of the columns without any lock, and runs it again under the read lock if a writer changed
+     * them meanwhile. A read that saw a change half done may also fail with an exception, which is treated the
+     * same way. The reader must not have side effects, since it may run twice.
+     */
+    private <T> T readOptimistically(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // A writer got in between; read again below.
+            }
+        }
+        return readLocked(reader);
+    }
+
+    // Runs a read under the read lock, for structures that are not safe to read while they change, such as the month index.
+    private <T> T readLocked(Supplier<T> reader) {
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
     public ExpenseService getService() {
         return service;
     }
 
-    public boolean editExpense(Expense oldExpense, Expense newExpense) {
+    public synchronized boolean editExpense(Expense oldExpense, Expense newExpense) {
         if (oldExpense == null || newExpense == null) {
             return false;
         }
 
-        int index = expenses.indexOf(oldExpense);
+        // Expenses that came from this ledger carry their id, which finds the right row even if another row has the same values.
+        int index = store.rowOf(oldExpense.getId());
+        if (index == -1) {
+            index = store.indexOf(oldExpense);
+        }
         if (index != -1) {
-            expenses.set(index, newExpense);
-            return true;
+            return replaceById(store.getId(index), newExpense);
         } else return false;
     }
 
+    // Returns an unmodifiable copy of the ledger, in ledger order. Every Expense is created here, so code that only
+    // needs a few rows of a large ledger should use getExpenseAt or readStore instead.
     public List<Expense> getAllExpenses() {
-        return expenses;
+        return readOptimistically(() -> List.copyOf(expenses));
+    }
+
+    // Returns a copy of the expense in a row of the ledger, e.g. the model row of a table, or null if there is none.
+    public Expense getExpenseAt(int row) {
+        return readOptimistically(() -> row >= 0 && row < store.size() ? store.get(row) : null);
+    }
+
+    /**
+     * Reads the columns of the ledger without blocking writers, for code that scans large ledgers, such as the table.
+     * Like the manager's own scans, the reader runs without any lock and runs again under the read lock if a
+     * writer changed the ledger meanwhile. It must therefore not have side effects, and must not keep the store.
+     */
+    public <T> T readStore(Function<ExpenseStore, T> reader) {
+        return readOptimistically(() -> reader.apply(store));
     }
 
     public void printExpenses() { // Useful for debugging.
+        List<Expense> expenses = getAllExpenses();
         if (expenses.isEmpty()) {
             System.out.println("No expenses to display.");
             return;
@@ -77,45 +301,297 @@ public class ExpenseManager {
         }
     }
 
-    public void clearExpenses() {
-        expenses.clear();
+    public synchronized void clearExpenses() {
+        checkNotLoading();
+        long stamp = lock.writeLock();
+        try {
+            store.clear();
+            totals.clear();
+            monthIndex.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        LedgerJournal journal = journal();
+        if (journal != null) {
+            try {
+                journal.clear();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        fireChanged();
     }
 
     // The following method will return a list of expenses that fall within a certain category.
+    // Large ledgers are scanned on every core, in chunks whose matches are joined in ledger order. The list is
+    // an immutable snapshot, so later changes to the ledger do not show up in it.
     public List<Expense> getExpensesByCategory(String categoryName) {
         if (categoryName == null) {
             return new ArrayList<>();
         }
 
-        return expenses.stream().filter(expense -> categoryName.equals(expense.getCategory())).collect(Collectors.toList());
+        long start = System.nanoTime();
+        AggregationEvent event = new AggregationEvent();
+        event.begin();
+        int category = Expense.categoryOrdinal(categoryName);
+        List<Expense> result = readOptimistically(() -> {
+            int size = store.size();
+            int[] rows;
+            if (size < PARALLEL_THRESHOLD) {
+                rows = scanCategory(category, 0, size);
+            } else {
+                int chunks = (size + PARALLEL_THRESHOLD - 1) / PARALLEL_THRESHOLD;
+                rows = IntStream.range(0, chunks).parallel()
+                        .mapToObj(chunk -> scanCategory(category, chunk * PARALLEL_THRESHOLD, Math.min(size, (chunk + 1) * PARALLEL_THRESHOLD)))
+                        .flatMapToInt(IntStream::of)
+                        .toArray();
+            }
+            return List.copyOf(store.asList(rows, rows.length));
+        });
+        CATEGORY_FILTER_LATENCY.recordSince(start);
+        commitEvent(event, "byCategory", null, result.size(), 0);
+        return result;
     }
 
     // I used a map to calculate total expenses by category, so each category (String) is mapped to the amount (Double).
+    // The running totals already hold the sum of every category per currency, so this only has to convert
+    // each currency once, with all the rate lookups running concurrently. The cost does not grow with the ledger.
+    // The rate lookups may block on the network, so the GUI calls this from a background thread; the totals are
+    // copied under the read lock first, so the ledger can keep changing while they are converted.
     public Map<String, Double> calculateTotalExpensesByCategory() {
-        Map<String, Double> totals = new HashMap<>();
-        String[] categories = {"Food", "Rent", "Groceries", "Utilities", "Transportation", "Entertainment", "Other"};
-        for (String category : categories) {
-            List<Expense> expensesByCategory = getExpensesByCategory(category);
-            double sum = expensesByCategory.stream().mapToDouble(expense -> {
-                try {
-                    return service.displayExpenseAs(expense, "JOD");
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+        long start = System.nanoTime();
+        AggregationEvent event = new AggregationEvent();
+        event.begin();
+        CategoryTotals snapshot = readLocked(totals::copy);
+        Map<String, Double> result = convertTotals(snapshot);
+        TOTALS_LATENCY.recordSince(start); // Includes waiting for the rates, which is what the user waits for too.
+        commitEvent(event, "totals", null, result.size(), snapshot.getSumsByCurrency().size());
+        return result;
+    }
+
+    // The same as above, for the expenses of a single month.
+    public Map<String, Double> calculateTotalExpensesByCategory(YearMonth yearMonth) {
+        long start = System.nanoTime();
+        AggregationEvent event = new AggregationEvent();
+        event.begin();
+        CategoryTotals snapshot = readLocked(() -> {
+            CategoryTotals monthTotals = monthIndex.getTotals(yearMonth);
+            return monthTotals == null ? new CategoryTotals(CATEGORIES.length) : monthTotals.copy();
+        });
+        Map<String, Double> result = convertTotals(snapshot);
+        MONTH_TOTALS_LATENCY.recordSince(start);
+        commitEvent(event, "monthTotals", yearMonth, result.size(), snapshot.getSumsByCurrency().size());
+        return result;
+    }
+
+    // A failed rate lookup is thrown as an UncheckedIOException, whose cause is the IOException of the service.
+    private Map<String, Double> convertTotals(CategoryTotals categoryTotals) {
+        Map<String, CompletableFuture<Double>> rates = new HashMap<>();
+        for (Map.Entry<String, double[]> currencySums : categoryTotals.getSumsByCurrency().entrySet()) {
+            if (hasAmounts(currencySums.getValue())) { // Only the rates that are actually needed are looked up.
+                rates.put(currencySums.getKey(), service.getConversionRateAsync(currencySums.getKey(), BASE_CURRENCY));
+            }
+        }
+        Map<String, Double> result = new HashMap<>();
+        for (int category = 0; category < CATEGORIES.length; category++) {
+            double sum = categoryTotals.getBaseSum(category);
+            for (Map.Entry<String, double[]> currencySums : categoryTotals.getSumsByCurrency().entrySet()) {
+                double amount = currencySums.getValue()[category];
+                if (amount != 0) {
+                    try {
+                        sum += amount * ExpenseService.await(rates.get(currencySums.getKey()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
                 }
-            }).sum();
-            totals.put(category, sum);
+            }
+            result.put(CATEGORIES[category], sum);
+        }
+        return result;
+    }
+
+    private static boolean hasAmounts(double[] sums) {
+        for (double sum : sums) {
+            if (sum != 0) {
+                return true;
+            }
         }
-        return totals;
+        return false;
+    }
+
+    // Recomputes the running totals and the month index from scratch, e.g. after historical rates were imported
+    // for dates that are already in the ledger.
+    public synchronized void rebuildTotals() {
+        long stamp = lock.writeLock();
+        try {
+            rebuildIndexes();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // The part of rebuildTotals() that runs under the write lock, for loaders that already hold it. Looking up
+    // the historical rate of every row is the expensive part, so for large ledgers that runs on every core first.
+    private void rebuildIndexes() {
+        long start = System.nanoTime();
+        AggregationEvent event = new AggregationEvent();
+        event.begin();
+        totals.clear();
+        monthIndex.clear();
+        int size = store.size();
+        if (service.getHistoricalRateStore() != null && size >= PARALLEL_THRESHOLD) {
+            double[] baseAmounts = new double[size];
+            IntStream.range(0, size).parallel().forEach(row -> baseAmounts[row] = historicalBaseAmount(row));
+            for (int row = 0; row < size; row++) {
+                indexRow(row, baseAmounts[row]);
+            }
+        } else {
+            for (int row = 0; row < size; row++) {
+                indexRow(row);
+            }
+        }
+        REBUILD_LATENCY.recordSince(start);
+        commitEvent(event, "rebuildTotals", null, monthIndex.getMonths().size(), 0);
+    }
+
+    // The rows of a range of the ledger that are in a category. Only the byte column is scanned.
+    private int[] scanCategory(int category, int from, int to) {
+        int[] rows = new int[to - from];
+        int count = 0;
+        for (int row = from; row < to; row++) {
+            if (store.getCategoryOrdinal(row) == category) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    // Commits a flight recorder event; the fields are only filled in while it is being recorded.
+    private void commitEvent(AggregationEvent event, String operation, YearMonth month, int resultSize, int currencies) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.month = month == null ? null : month.toString();
+            event.ledgerRows = store.size();
+            event.resultSize = resultSize;
+            event.currencies = currencies;
+            event.commit();
+        }
+    }
+
+    private void indexRow(int row) {
+        indexRow(row, historicalBaseAmount(row));
     }
 
-    // I used a TreeMap and java.time to group the expenses by month.
+    // The base amount is kept with the row, so taking the row out subtracts exactly what was added, even if
+    // historical rates were recorded in between.
+    private void indexRow(int row, double baseAmount) {
+        store.setBaseAmount(row, baseAmount);
+        totals.add(store.getCategoryOrdinal(row), store.getCurrency(row), store.getAmount(row), baseAmount);
+        monthIndex.add(store.getId(row), store.getEpochDay(row), store.getCategoryOrdinal(row), store.getCurrency(row), store.getAmount(row), baseAmount);
+    }
+
+    private void unindexRow(int row) {
+        double baseAmount = store.getBaseAmount(row);
+        totals.remove(store.getCategoryOrdinal(row), store.getCurrency(row), store.getAmount(row), baseAmount);
+        monthIndex.remove(store.getId(row), store.getEpochDay(row), store.getCategoryOrdinal(row), store.getCurrency(row), store.getAmount(row), baseAmount);
+    }
+
+    public void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    // True once the ledger was loaded or saved, from when on every change is recorded and saving only writes the changes.
+    public boolean isTrackingChanges() {
+        return journal() != null;
+    }
+
+    private void fireChanged() {
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    // The journal of the file handler, or null if changes are not being recorded.
+    private LedgerJournal journal() {
+        return fileHandler == null ? null : fileHandler.getJournal();
+    }
+
+    // Records the current values of a row in the journal, so the next save only has to write the change.
+    private void journalPut(int row) {
+        LedgerJournal journal = journal();
+        if (journal != null) {
+            try {
+                journal.put(store, row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void journalRemove(long id) {
+        LedgerJournal journal = journal();
+        if (journal != null) {
+            try {
+                journal.remove(id);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Converts a row with the stored rate of its own date, or returns NaN if there is none and today's rate has to be used.
+    private double historicalBaseAmount(int row) {
+        return historicalBaseAmount(store.getAmount(row), store.getEpochDay(row), store.getCurrency(row));
+    }
+
+    // The same for an expense that is not in the store yet, so its date is checked before the store is changed.
+    private double historicalBaseAmount(Expense expense) {
+        return historicalBaseAmount(expense.getAmount(), ExpenseStore.toEpochDay(expense.getDate()), expense.getCurrency());
+    }
+
+    private double historicalBaseAmount(double amount, int epochDay, String currency) {
+        if (service.getHistoricalRateStore() == null || currency == null) {
+            return Double.NaN;
+        }
+        return amount * service.getHistoricalRate(currency, BASE_CURRENCY, LocalDate.ofEpochDay(epochDay));
+    }
+
+    // The months that have expenses, in order. This is an immutable snapshot that the month index keeps ready, so it
+    // costs nothing to call and needs no lock.
+    public NavigableSet<YearMonth> getMonths() {
+        return monthIndex.getMonths();
+    }
+
+    // The expenses of one month, in the order they were added, read from the month index. The list is an
+    // immutable snapshot, so later changes to the ledger do not show up in it.
+    public List<Expense> getExpensesForMonth(YearMonth yearMonth) {
+        return readLocked(() -> {
+            long[] ids = monthIndex.getIds(yearMonth);
+            int[] rows = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                rows[i] = store.rowOf(ids[i]);
+            }
+            return List.copyOf(store.asList(rows, rows.length));
+        });
+    }
+
+    public int getExpenseCount(YearMonth yearMonth) {
+        return readLocked(() -> monthIndex.getCount(yearMonth));
+    }
+
+    // I used a TreeMap to group the expenses by month. The groups come from the month index, so no dates are parsed.
     public TreeMap<YearMonth, List<Expense>> getExpensesGroupedByMonth() {
+        long start = System.nanoTime();
+        AggregationEvent event = new AggregationEvent();
+        event.begin();
         TreeMap<YearMonth, List<Expense>> groupedByMonth = new TreeMap<>();
-        for (Expense expense : expenses) {
-            LocalDate date = LocalDate.parse(expense.getDate(), formatter);
-            YearMonth yearMonth = YearMonth.from(date);
-            groupedByMonth.computeIfAbsent(yearMonth, k -> new ArrayList<>()).add(expense);
+        for (YearMonth yearMonth : monthIndex.getMonths()) {
+            groupedByMonth.put(yearMonth, getExpensesForMonth(yearMonth)); // A month removed meanwhile just comes out empty.
         }
+        GROUP_BY_MONTH_LATENCY.recordSince(start);
+        commitEvent(event, "groupByMonth", null, groupedByMonth.size(), 0);
         return groupedByMonth;
     }
 
@@ -129,22 +605,168 @@ public class ExpenseManager {
         ExpenseManager that = (ExpenseManager) o;
 
         // Assuming equality is based on having the exact same expenses
-        return Objects.equals(expenses, that.expenses);
+        return Objects.equals(getAllExpenses(), that.getAllExpenses());
     }
 
     @Override
     public int hashCode() {
-        return expenses.hashCode();
+        return getAllExpenses().hashCode();
     }
 
+    // Told about the pages of a ledger while it is being loaded.
+    public interface LoadListener {
+        // Called from the loading thread with detached copies of the rows that were just appended to the ledger.
+        void pageLoaded(List<Expense> page);
+
+        // Called when the journal changed or moved rows that were already passed to pageLoaded, so a view
+        // built from the pages has to show the whole ledger again.
+        default void rowsChanged() {
+        }
+    }
+
+    public static final int LOAD_PAGE_SIZE = 4096;
+
+    // The ledger file is copied straight into the columns of a new store, so no Expense objects are created,
+    // and the journal is replayed on top. The current ledger is only replaced once everything was read.
     public List<Expense> loadExpenses() throws IOException, ClassNotFoundException {
-        List<Expense> loadedExpenses = fileHandler.loadExpensesFromFile();
-        clearExpenses();
-        expenses.addAll(loadedExpenses);
-        return loadedExpenses;
+        synchronized (fileLock) {
+            beginLoad();
+            try {
+                ExpenseStore loaded = new ExpenseStore();
+                fileHandler.loadLedger(loaded);
+                replaceStore(loaded);
+            } finally {
+                endLoad();
+            }
+        }
+        return getAllExpenses();
+    }
+
+    // Loads the ledger like loadExpenses(), but read-only: nothing is migrated or written, and changes are not
+    // recorded, so they are not saved automatically either. For reports.
+    public void readExpenses() throws IOException, ClassNotFoundException {
+        synchronized (fileLock) {
+            beginLoad();
+            try {
+                ExpenseStore loaded = new ExpenseStore();
+                fileHandler.readLedger(loaded);
+                replaceStore(loaded);
+            } finally {
+                endLoad();
+            }
+        }
+    }
+
+    // Refuses changes until endLoad, since they would be lost or recorded against the wrong ledger. The load
+    // itself changes the ledger without this check.
+    private synchronized void beginLoad() {
+        loading = true;
+    }
+
+    private synchronized void endLoad() {
+        loading = false;
+    }
+
+    // True while a load is replacing the ledger, when changes are refused.
+    public synchronized boolean isLoading() {
+        return loading;
+    }
+
+    private void checkNotLoading() {
+        if (loading) {
+            throw new IllegalStateException("The ledger is still being loaded");
+        }
+    }
+
+    // Swaps a store that was loaded without any lock into the ledger; readers only wait for the swap and the reindexing.
+    private synchronized void replaceStore(ExpenseStore loaded) {
+        long stamp = lock.writeLock();
+        try {
+            store.replaceWith(loaded);
+            rebuildIndexes();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Loads the ledger page by page, so that a view can show the first rows while the rest is still being read.
+     * Each page is indexed as soon as it is read and then passed to the listener. Only one page of Expense
+     * objects exists at a time, so memory does not grow beyond the columns of the ledger itself.
+     * <p>
+     * The current ledger is cleared once the file was opened. If reading fails after that, the ledger holds
+     * the rows read so far, and changes are not saved automatically until it is loaded or saved again.
+     * <p>
+     * The lock of the manager is only held while a page is appended, so other threads are never stalled for
+     * longer than that, but changes are refused with an IllegalStateException until the load is done.
+     */
+    public List<Expense> loadExpenses(LoadListener listener) throws IOException, ClassNotFoundException {
+        synchronized (fileLock) {
+            beginLoad();
+            try (LedgerFile.Reader reader = fileHandler.openLedger()) {
+                synchronized (this) {
+                    long stamp = lock.writeLock();
+                    try {
+                        store.clear(); // Not through clearExpenses(), since this is not a change that has to be saved.
+                        totals.clear();
+                        monthIndex.clear();
+                        store.ensureCapacity(reader.getRowCount());
+                    } finally {
+                        lock.unlockWrite(stamp);
+                    }
+                }
+                while (reader.hasMoreRows()) {
+                    List<Expense> page = appendPage(reader);
+                    if (listener != null) {
+                        listener.pageLoaded(page);
+                    }
+                }
+                int replayed;
+                synchronized (this) {
+                    long stamp = lock.writeLock();
+                    try {
+                        replayed = fileHandler.finishLoad(store, reader.getGeneration());
+                        if (replayed > 0) {
+                            rebuildIndexes();
+                        }
+                    } finally {
+                        lock.unlockWrite(stamp);
+                    }
+                }
+                if (replayed > 0 && listener != null) {
+                    listener.rowsChanged();
+                }
+            } finally {
+                endLoad();
+            }
+        }
+        return getAllExpenses();
     }
 
+    // Reads and indexes the next page of a load, and returns copies of its rows for the listener.
+    private synchronized List<Expense> appendPage(LedgerFile.Reader reader) throws IOException {
+        int from = store.size();
+        long stamp = lock.writeLock(); // Per page, so readers get in between the pages.
+        try {
+            reader.readPage(store, LOAD_PAGE_SIZE);
+            for (int row = from; row < store.size(); row++) {
+                indexRow(row);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return new ArrayList<>(expenses.subList(from, store.size()));
+    }
+
+    // Once the ledger was loaded or saved, this only appends the changes since then to the journal. Only capturing
+    // the changes, or the copy of the ledger for a snapshot, holds up writers; the file is written after that.
     public void saveExpenses() throws IOException {
-        fileHandler.saveExpensesToFile(getAllExpenses());
+        synchronized (fileLock) {
+            ExpenseFileHandler.PendingSave save;
+            synchronized (this) {
+                save = fileHandler.prepareSave(store);
+            }
+            save.write();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,433 @@
+package com.example.model;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Column-oriented storage for expenses. Instead of one object with four Strings per expense, every field
+ * is kept in its own primitive array: amounts, dates as epoch days, category ordinals, and currencies and
+ * names as ids into small dictionaries. This keeps large ledgers compact and lets aggregations scan plain arrays.
+ * <p>
+ * Expense objects are only created when a caller asks for one, as detached copies of a row.
+ * <p>
+ * Every row has a stable id, which stays the same when other rows are added or removed. Rows are found by id
+ * through a hash index, so finding or editing an expense costs the same no matter how large the ledger is.
+ * Removing one keeps the order the expenses were added in, by moving the rows after it up like ArrayList does.
+ */
+public class ExpenseStore {
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy"); // Allowed date-time format.
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double[] amounts = new double[INITIAL_CAPACITY];
+    private int[] epochDays = new int[INITIAL_CAPACITY];
+    private byte[] categories = new byte[INITIAL_CAPACITY];
+    private byte[] currencies = new byte[INITIAL_CAPACITY];
+    private int[] nameIds = new int[INITIAL_CAPACITY];
+    private long[] ids = new long[INITIAL_CAPACITY];
+    // The amount of each row in the base currency, as the manager's totals counted it when the row was indexed,
+    // or NaN if they count it in its own currency. Not saved; the manager sets it whenever it indexes a row.
+    private double[] baseAmounts = new double[INITIAL_CAPACITY];
+    private int size;
+    private IdIndex rowsById = new IdIndex();
+    private long nextId = 1;
+
+    // Dictionaries; an id is the position of the value in its dictionary. Safe to read while a row is added.
+    private StringDictionary currencyCodes = new StringDictionary();
+    private StringDictionary names = new StringDictionary();
+    // Dates repeat a lot, so each is formatted only once. Concurrent, since readers fill it in while they share the read lock.
+    private final Map<Integer, String> formattedDates = new ConcurrentHashMap<>();
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Appends an expense and gives it an id. The expense keeps its id if it already has one that is not
+     * taken, e.g. when a saved ledger is loaded; otherwise it gets a new one. The id is also set on the expense.
+     *
+     * @return the row the expense was stored in
+     */
+    public int add(Expense expense) {
+        ensureCapacity(size + 1);
+        write(size, expense);
+        long id = assignId(expense.getId());
+        expense.setId(id);
+        return size++;
+    }
+
+    /**
+     * Appends a row from raw column values, for loaders that read the columns straight from a file.
+     * The currency and name are ids returned by {@link #internCurrency} and {@link #internName};
+     * the id is kept like in {@link #add}.
+     *
+     * @return the row that was written
+     */
+    public int addRow(long id, double amount, int epochDay, int category, int currencyId, int nameId) {
+        checkColumns(category, currencyId, nameId);
+        ensureCapacity(size + 1);
+        writeColumns(size, amount, epochDay, category, currencyId, nameId);
+        assignId(id);
+        return size++;
+    }
+
+    // Overwrites a row from raw column values; the row keeps its id.
+    public void setRow(int row, double amount, int epochDay, int category, int currencyId, int nameId) {
+        checkRow(row);
+        checkColumns(category, currencyId, nameId);
+        writeColumns(row, amount, epochDay, category, currencyId, nameId);
+    }
+
+    // Adds a currency to the dictionary if it is not there yet and returns its id.
+    public int internCurrency(String currency) {
+        return currencyId(currency);
+    }
+
+    // Adds a name to the dictionary if it is not there yet and returns its id.
+    public int internName(String name) {
+        return nameId(name);
+    }
+
+    // Gives the next row an id, keeping the requested one if it is valid and free.
+    private long assignId(long id) {
+        if (id <= 0 || rowsById.contains(id)) {
+            id = nextId;
+        }
+        nextId = Math.max(nextId, id + 1);
+        ids[size] = id;
+        rowsById.put(id, size);
+        return id;
+    }
+
+    // Overwrites a row with another expense, which takes over the id of the row.
+    public void set(int row, Expense expense) {
+        checkRow(row);
+        write(row, expense);
+        expense.setId(ids[row]);
+    }
+
+    /**
+     * Removes a row and moves every later row up by one, so the ledger keeps its order. This copies the columns
+     * of the later rows and updates their entries in the id index; use {@link #removeRows} to remove many at once.
+     */
+    public void remove(int row) {
+        checkRow(row);
+        BitSet removed = new BitSet();
+        removed.set(row);
+        removeRows(removed);
+    }
+
+    /**
+     * Removes every row whose bit is set in one pass over the rows after the first of them, keeping the order
+     * of the rows that stay.
+     *
+     * @return the number of rows that were removed
+     */
+    public int removeRows(BitSet rows) {
+        int first = rows.nextSetBit(0);
+        if (first < 0 || first >= size) {
+            return 0;
+        }
+        int kept = first;
+        for (int row = first; row < size; row++) {
+            if (rows.get(row)) {
+                rowsById.remove(ids[row]);
+            } else {
+                amounts[kept] = amounts[row];
+                epochDays[kept] = epochDays[row];
+                categories[kept] = categories[row];
+                currencies[kept] = currencies[row];
+                nameIds[kept] = nameIds[row];
+                ids[kept] = ids[row];
+                baseAmounts[kept] = baseAmounts[row];
+                rowsById.put(ids[kept], kept);
+                kept++;
+            }
+        }
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    public double getBaseAmount(int row) {
+        return baseAmounts[row];
+    }
+
+    public void setBaseAmount(int row, double baseAmount) {
+        checkRow(row);
+        baseAmounts[row] = baseAmount;
+    }
+
+    // Returns the row of the expense with the given id, or -1 if there is none.
+    public int rowOf(long id) {
+        return rowsById.get(id);
+    }
+
+    // Removes every row but keeps the dictionaries, e.g. to reuse the store as a buffer for one page of rows at a time.
+    public void clearRows() {
+        size = 0;
+        rowsById.clear();
+    }
+
+    public void clear() {
+        size = 0;
+        rowsById.clear();
+        nextId = 1;
+        // The dictionaries are only worth keeping while rows refer to them.
+        currencyCodes.clear();
+        names.clear();
+    }
+
+    // Takes over the rows, ids and dictionaries of another store in constant time, e.g. one that was loaded
+    // from a file in the background. The other store must not be used afterwards.
+    public void replaceWith(ExpenseStore other) {
+        amounts = other.amounts;
+        epochDays = other.epochDays;
+        categories = other.categories;
+        currencies = other.currencies;
+        nameIds = other.nameIds;
+        ids = other.ids;
+        baseAmounts = other.baseAmounts;
+        size = other.size;
+        rowsById = other.rowsById;
+        nextId = other.nextId;
+        currencyCodes = other.currencyCodes;
+        names = other.names;
+    }
+
+    // Copies the rows, ids and dictionaries into a new store, which can be read while this one keeps changing.
+    public ExpenseStore copy() {
+        ExpenseStore copy = new ExpenseStore();
+        copy.amounts = Arrays.copyOf(amounts, size);
+        copy.epochDays = Arrays.copyOf(epochDays, size);
+        copy.categories = Arrays.copyOf(categories, size);
+        copy.currencies = Arrays.copyOf(currencies, size);
+        copy.nameIds = Arrays.copyOf(nameIds, size);
+        copy.ids = Arrays.copyOf(ids, size);
+        copy.baseAmounts = Arrays.copyOf(baseAmounts, size);
+        copy.size = size;
+        copy.rowsById.ensureCapacity(size);
+        for (int row = 0; row < size; row++) {
+            copy.rowsById.put(ids[row], row);
+        }
+        copy.nextId = nextId;
+        copy.currencyCodes = currencyCodes.copy();
+        copy.names = names.copy();
+        return copy;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity <= amounts.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, amounts.length + (amounts.length >> 1)); // Grow by 50%, like ArrayList.
+        amounts = Arrays.copyOf(amounts, newCapacity);
+        epochDays = Arrays.copyOf(epochDays, newCapacity);
+        categories = Arrays.copyOf(categories, newCapacity);
+        currencies = Arrays.copyOf(currencies, newCapacity);
+        nameIds = Arrays.copyOf(nameIds, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        baseAmounts = Arrays.copyOf(baseAmounts, newCapacity);
+        rowsById.ensureCapacity(capacity);
+    }
+
+    // Creates a detached Expense with the values of a row. Changing it does not change the store.
+    public Expense get(int row) {
+        checkRow(row);
+        return Expense.restore(ids[row], getName(row), getDate(row), getCategory(row), amounts[row], getCurrency(row));
+    }
+
+    public double getAmount(int row) {
+        return amounts[row];
+    }
+
+    public int getEpochDay(int row) {
+        return epochDays[row];
+    }
+
+    public int getCategoryOrdinal(int row) {
+        return categories[row];
+    }
+
+    public String getCategory(int row) {
+        return ExpenseManager.CATEGORIES[categories[row]];
+    }
+
+    public int getCurrencyId(int row) {
+        return currencies[row] & 0xFF;
+    }
+
+    public String getCurrency(int row) {
+        return currencyCodes.get(currencies[row] & 0xFF);
+    }
+
+    public String getName(int row) {
+        return names.get(nameIds[row]);
+    }
+
+    public int getNameId(int row) {
+        return nameIds[row];
+    }
+
+    // The name behind a name id.
+    public String getNameEntry(int nameId) {
+        return names.get(nameId);
+    }
+
+    public int getNameCount() {
+        return names.size();
+    }
+
+    public String getDate(int row) {
+        return formattedDates.computeIfAbsent(epochDays[row], day -> LocalDate.ofEpochDay(day).format(formatter));
+    }
+
+    // The currency code behind a currency id.
+    public String getCurrencyCode(int currencyId) {
+        return currencyCodes.get(currencyId);
+    }
+
+    public int getCurrencyCount() {
+        return currencyCodes.size();
+    }
+
+    // Finds the first row with the same values as the expense, without creating an Expense for every row.
+    public int indexOf(Expense expense) {
+        if (expense == null) {
+            return -1;
+        }
+        int nameId = names.idOf(expense.getName());
+        int currencyId = currencyCodes.idOf(expense.getCurrency());
+        int category = Expense.categoryOrdinal(expense.getCategory());
+        if (nameId < 0 || currencyId < 0 || category < 0) {
+            return -1;
+        }
+        int epochDay = toEpochDay(expense.getDate());
+        for (int row = 0; row < size; row++) {
+            if (epochDays[row] == epochDay && nameIds[row] == nameId && categories[row] == category
+                    && (currencies[row] & 0xFF) == currencyId && Double.compare(amounts[row], expense.getAmount()) == 0) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    // A read-only list that creates each Expense when it is asked for.
+    public List<Expense> asList() {
+        return new RowList(null, 0);
+    }
+
+    // A read-only list of the given rows.
+    public List<Expense> asList(int[] rows, int count) {
+        return new RowList(rows, count);
+    }
+
+    public static int toEpochDay(String date) {
+        return (int) LocalDate.parse(date, formatter).toEpochDay();
+    }
+
+    // Everything is checked before the first column is written, so an invalid expense leaves the row as it was.
+    private void write(int row, Expense expense) {
+        int category = Expense.categoryOrdinal(expense.getCategory());
+        if (category < 0) {
+            throw new IllegalArgumentException("Invalid category");
+        }
+        if (expense.getCurrency() == null) {
+            throw new IllegalArgumentException("Invalid currency");
+        }
+        int epochDay = toEpochDay(expense.getDate());
+        int currencyId = currencyId(expense.getCurrency());
+        writeColumns(row, expense.getAmount(), epochDay, category, currencyId, nameId(expense.getName()));
+    }
+
+    private void checkColumns(int category, int currencyId, int nameId) {
+        if (category < 0 || category >= ExpenseManager.CATEGORIES.length) {
+            throw new IllegalArgumentException("Invalid category");
+        }
+        if (currencyId < 0 || currencyId >= currencyCodes.size() || nameId < 0 || nameId >= names.size()) {
+            throw new IllegalArgumentException("Unknown dictionary id");
+        }
+    }
+
+    private void writeColumns(int row, double amount, int epochDay, int category, int currencyId, int nameId) {
+        amounts[row] = amount;
+        epochDays[row] = epochDay;
+        categories[row] = (byte) category;
+        currencies[row] = (byte) currencyId;
+        nameIds[row] = nameId;
+    }
+
+    private int currencyId(String currency) {
+        int id = currencyCodes.idOf(currency);
+        if (id < 0) {
+            if (currencyCodes.size() == 256) {
+                throw new IllegalStateException("Too many different currencies");
+            }
+            id = currencyCodes.add(currency);
+        }
+        return id;
+    }
+
+    private int nameId(String name) {
+        return names.add(name);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+        }
+    }
+
+    private class RowList extends AbstractList<Expense> implements RandomAccess {
+        private final int[] rows; // Null means every row of the store.
+        private final int count;
+
+        private RowList(int[] rows, int count) {
+            this.rows = rows;
+            this.count = count;
+        }
+
+        @Override
+        public Expense get(int index) {
+            if (rows == null) {
+                return ExpenseStore.this.get(index);
+            }
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+            }
+            return ExpenseStore.this.get(rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows == null ? size : count;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            if (rows == null && o instanceof Expense) {
+                return ExpenseStore.this.indexOf((Expense) o);
+            }
+            return super.indexOf(o);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.model;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from expense id to row, with open addressing over primitive arrays,
+ * so that looking up a row by id neither boxes nor scans.
+ */
+class IdIndex {
+    private static final long EMPTY = 0; // Ids start at 1, so 0 marks a free slot.
+
+    private long[] keys = new long[16];
+    private int[] rows = new int[16];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    // Returns the row of an id, or -1 if it is not in the index. Optimistic readers call this while a writer may be
+    // resizing the table, so the arrays are read only once and the probe stops after one lap: a racing read may
+    // return a wrong row or throw, which the manager discards when it validates the read, but it never spins.
+    int get(long id) {
+        if (id == EMPTY) {
+            return -1;
+        }
+        long[] keys = this.keys;
+        int[] rows = this.rows;
+        int mask = keys.length - 1;
+        int slot = hash(id) & mask;
+        for (int probes = 0; probes < keys.length && keys[slot] != EMPTY; probes++, slot = (slot + 1) & mask) {
+            if (keys[slot] == id) {
+                return rows[slot];
+            }
+        }
+        return -1;
+    }
+
+    boolean contains(long id) {
+        return get(id) >= 0;
+    }
+
+    // Grows the table up front, so that adding this many ids does not rehash along the way.
+    void ensureCapacity(int count) {
+        int capacity = keys.length;
+        while (count * 4 > capacity * 3) {
+            capacity *= 2;
+        }
+        if (capacity > keys.length) {
+            resize(capacity);
+        }
+    }
+
+    void put(long id, int row) {
+        if (id == EMPTY) {
+            throw new IllegalArgumentException("Invalid id: " + id);
+        }
+        if ((size + 1) * 4 > keys.length * 3) { // Keep the table at most 75% full.
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int slot = hash(id) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == id) {
+                rows[slot] = row;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        rows[slot] = row;
+        size++;
+    }
+
+    void remove(long id) {
+        int mask = keys.length - 1;
+        int slot = hash(id) & mask;
+        while (keys[slot] != id) {
+            if (keys[slot] == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = EMPTY;
+        size--;
+        // Move later entries of the same probe run back, so that lookups never stop early at the gap.
+        for (int next = (slot + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            boolean reachable = slot <= next ? (home <= slot || home > next) : (home <= slot && home > next);
+            if (reachable) {
+                keys[slot] = keys[next];
+                rows[slot] = rows[next];
+                keys[next] = EMPTY;
+                slot = next;
+            }
+        }
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldRows = rows;
+        keys = new long[capacity];
+        rows = new int[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldRows[i]);
+            }
+        }
+    }
+
+    private static int hash(long id) {
+        // Ids are handed out in sequence, so they are already spread evenly; keeping neighbouring ids in
+        // neighbouring slots means that loading or scanning a ledger walks the table in order.
+        return (int) (id ^ (id >>> 32));
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An index of the ledger by month, kept up to date by every change instead of being rebuilt from the
+ * date strings. For each month it holds the ids of its expenses, in the order they were added, and their running totals.
+ */
+public class MonthIndex {
+    private final TreeMap<YearMonth, Month> months = new TreeMap<>();
+    private final int categoryCount;
+    // An immutable copy of the months, replaced when a month is added or removed, which is rare compared to
+    // changes within a month. It can be read from any thread without a lock.
+    private volatile NavigableSet<YearMonth> monthsSnapshot = Collections.emptyNavigableSet();
+
+    public MonthIndex(int categoryCount) {
+        this.categoryCount = categoryCount;
+    }
+
+    public static YearMonth monthOf(int epochDay) {
+        return YearMonth.from(LocalDate.ofEpochDay(epochDay));
+    }
+
+    // The months that have at least one expense, in order, as they were when this was called.
+    public NavigableSet<YearMonth> getMonths() {
+        return monthsSnapshot;
+    }
+
+    private void updateSnapshot() {
+        monthsSnapshot = Collections.unmodifiableNavigableSet(new TreeSet<>(months.navigableKeySet()));
+    }
+
+    public int getCount(YearMonth yearMonth) {
+        Month month = months.get(yearMonth);
+        return month == null ? 0 : month.count;
+    }
+
+    // A copy of the ids of a month, in the order they were added.
+    public long[] getIds(YearMonth yearMonth) {
+        Month month = months.get(yearMonth);
+        return month == null ? new long[0] : Arrays.copyOf(month.ids, month.count);
+    }
+
+    // The running totals of a month, or null if it has no expenses.
+    public CategoryTotals getTotals(YearMonth yearMonth) {
+        Month month = months.get(yearMonth);
+        return month == null ? null : month.totals;
+    }
+
+    // Adds an expense to its month; the id must not be in the index yet.
+    public void add(long id, int epochDay, int category, String currency, double amount, double baseAmount) {
+        YearMonth yearMonth = monthOf(epochDay);
+        Month month = months.get(yearMonth);
+        if (month == null) {
+            month = new Month(categoryCount);
+            months.put(yearMonth, month);
+            updateSnapshot();
+        }
+        month.insert(id);
+        month.totals.add(category, currency, amount, baseAmount);
+    }
+
+    // Takes an expense out of its month, with the same values it was added with.
+    public void remove(long id, int epochDay, int category, String currency, double amount, double baseAmount) {
+        YearMonth yearMonth = monthOf(epochDay);
+        Month month = months.get(yearMonth);
+        if (month == null) {
+            return;
+        }
+        month.delete(id);
+        month.totals.remove(category, currency, amount, baseAmount);
+        if (month.count == 0) {
+            months.remove(yearMonth);
+            updateSnapshot();
+        }
+    }
+
+    public void clear() {
+        months.clear();
+        monthsSnapshot = Collections.emptyNavigableSet();
+    }
+
+    private static final class Month {
+        // Sorted; ids are handed out in increasing order, so this is the order the expenses were added in.
+        // Ids never change, so removing another expense from the ledger does not touch this month.
+        private long[] ids = new long[8];
+        private int count;
+        private final CategoryTotals totals;
+
+        private Month(int categoryCount) {
+            this.totals = new CategoryTotals(categoryCount);
+        }
+
+        private void insert(long id) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            // New expenses have the highest id, so they are normally appended.
+            int position = count == 0 || ids[count - 1] < id ? count : Arrays.binarySearch(ids, 0, count, id);
+            if (position < 0) {
+                position = -position - 1;
+            }
+            System.arraycopy(ids, position, ids, position + 1, count - position);
+            ids[position] = id;
+            count++;
+        }
+
+        private void delete(long id) {
+            int position = Arrays.binarySearch(ids, 0, count, id);
+            if (position >= 0) {
+                System.arraycopy(ids, position + 1, ids, position, count - position - 1);
+                count--;
+            }
+        }
+    }
+}
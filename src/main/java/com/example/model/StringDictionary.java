@@ -0,0 +1,73 @@
+package com.example.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps strings to dense ids and back, for the name and currency columns of the store. Entries are only ever
+ * appended, and both directions can be read while the one writer adds to it: the ids are a concurrent map, and
+ * a lookup by id reads the array once, so a reader that races with a resize sees the old or the new array,
+ * never a half-grown list.
+ */
+class StringDictionary {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private String[] values = new String[16];
+    private int size;
+    private int nullId = -1; // The concurrent map has no room for null, which a name may be.
+
+    int size() {
+        return size;
+    }
+
+    // Returns the id of a value, or -1 if it is not in the dictionary.
+    int idOf(String value) {
+        if (value == null) {
+            return nullId;
+        }
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    // Returns the id of a value, adding it first if it is not there yet.
+    int add(String value) {
+        int id = idOf(value);
+        if (id >= 0) {
+            return id;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value; // The value is in place before the id is handed out.
+        if (value == null) {
+            nullId = size;
+        } else {
+            ids.put(value, size);
+        }
+        return size++;
+    }
+
+    String get(int id) {
+        String[] values = this.values;
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Id: " + id + ", Size: " + size);
+        }
+        return values[id];
+    }
+
+    void clear() {
+        ids.clear();
+        values = new String[16];
+        size = 0;
+        nullId = -1;
+    }
+
+    StringDictionary copy() {
+        StringDictionary copy = new StringDictionary();
+        copy.ids.putAll(ids);
+        copy.values = Arrays.copyOf(values, values.length);
+        copy.size = size;
+        copy.nullId = nullId;
+        return copy;
+    }
+}
@@ -1,17 +1,201 @@
 package com.example.service;
 
 import com.example.model.Expense;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
-import org.json.JSONObject;
+import com.example.utils.LatencyHistogram;
+import com.example.utils.Metrics;
+import com.example.utils.jfr.RateFetchEvent;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class ExpenseService {
+public class ExpenseService implements Closeable {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy"); // Same format as Expense.
+    private static final LatencyHistogram CONVERSION_LATENCY = Metrics.getDefault().histogram("service.conversion");
+    private static final Metrics.Counter CONVERSION_ERRORS = Metrics.getDefault().counter("service.conversion.errors");
+
+    private final RateProvider rateProvider;
+    private final RateCache rateCache;
+    private final ExecutorService executor; // Runs asynchronous lookups, one thread per allowed lookup.
+    private final Map<String, CompletableFuture<Double>> inFlightRates = new ConcurrentHashMap<>();
+    // Set when rate-table mode is enabled, under the lock of the service; volatile, since lookups read them without it.
+    private volatile String rateTableBase;
+    private volatile String[] rateTableCurrencies;
+    private volatile RateTable rateTable;
+    private volatile HistoricalRateStore historicalRates; // Optional; used to convert expenses with the rate of their own date.
+
+    // Uses ExchangeRate-API, with the API key from the EXCHANGE_RATE_API_KEY environment variable.
+    public ExpenseService() {
+        this(new HttpRateProvider(), new RateCache());
+    }
+
+    // A constructor that takes a cache, so that the TTL and size of the cache can be configured.
+    public ExpenseService(RateCache rateCache) {
+        this(new HttpRateProvider(), rateCache);
+    }
+
+    // A constructor that takes a provider, e.g. a FixedRateProvider or StubRateServer for tests and benchmarks.
+    public ExpenseService(RateProvider rateProvider) {
+        this(rateProvider, new RateCache());
+    }
+
+    public ExpenseService(RateProvider rateProvider, RateCache rateCache) {
+        this(rateProvider, rateCache, HttpRateProvider.DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * @param rateProvider         where rates come from
+     * @param rateCache            the cache in front of the provider
+     * @param maxConcurrentLookups how many asynchronous lookups may run at once
+     */
+    public ExpenseService(RateProvider rateProvider, RateCache rateCache, int maxConcurrentLookups) {
+        if (rateProvider == null) {
+            throw new IllegalArgumentException("RateProvider cannot be null");
+        }
+        if (rateCache == null) {
+            throw new IllegalArgumentException("RateCache cannot be null");
+        }
+        if (maxConcurrentLookups < 1) {
+            throw new IllegalArgumentException("At least one concurrent lookup must be allowed");
+        }
+        this.rateProvider = rateProvider;
+        this.rateCache = rateCache;
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrentLookups, maxConcurrentLookups,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "exchange-rate-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true); // Pending lookups should never keep the application alive.
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    public RateProvider getRateProvider() {
+        return rateProvider;
+    }
+
+    public RateCache getRateCache() {
+        return rateCache;
+    }
+
+    /**
+     * Enables rate-table mode: instead of fetching each pair separately, one table of rates against
+     * the base currency is fetched and every cross rate between the given currencies is derived from it.
+     * The table is refreshed when it is older than the cache TTL.
+     *
+     * @param baseCurrency the currency to fetch the table for
+     * @param currencies   the currencies the table should cover
+     */
+    public synchronized void useRateTable(String baseCurrency, String[] currencies) {
+        if (baseCurrency == null || currencies == null) {
+            throw new IllegalArgumentException("Base currency and currencies cannot be null");
+        }
+        this.rateTableCurrencies = currencies.clone();
+        this.rateTableBase = baseCurrency; // Last, so a lookup that sees the base also sees the currencies.
+        this.rateTable = null;
+    }
+
+    public RateTable getRateTable() {
+        return rateTable;
+    }
+
+    /**
+     * Sets the store of historical rates. When a store is set, expenses are converted with the rate of their own date
+     * if the store has one, and every freshly fetched rate table is recorded in it as today's snapshot.
+     */
+    public void setHistoricalRateStore(HistoricalRateStore historicalRates) {
+        this.historicalRates = historicalRates;
+    }
+
+    public HistoricalRateStore getHistoricalRateStore() {
+        return historicalRates;
+    }
+
+    /**
+     * Looks up a rate in the historical store only, never calling the API.
+     *
+     * @return the rate on that date, or NaN if there is no store or it has no rate for the pair on or before that date
+     */
+    public double getHistoricalRate(String sourceCurrency, String targetCurrency, LocalDate date) {
+        if (sourceCurrency.equals(targetCurrency)) {
+            return 1.0;
+        }
+        HistoricalRateStore store = historicalRates;
+        if (store == null || date == null) {
+            return Double.NaN;
+        }
+        return store.getRate(sourceCurrency, targetCurrency, date);
+    }
+
+    /**
+     * Fetches a fresh base-currency table and rebuilds the cross-rate matrix from it.
+     *
+     * @return the new rate table
+     * @throws IOException if there is an issue with the currency conversion API
+     */
+    public synchronized RateTable refreshRateTable() throws IOException {
+        if (rateTableBase == null) {
+            throw new IllegalStateException("Rate-table mode is not enabled");
+        }
+        Map<String, Double> conversionRates = rateProvider.getRates(rateTableBase);
+        Map<String, Double> ratesFromBase = new HashMap<>();
+        for (String currency : rateTableCurrencies) {
+            if (conversionRates.containsKey(currency)) {
+                ratesFromBase.put(currency, conversionRates.get(currency));
+            }
+        }
+        rateTable = RateTable.fromBaseRates(rateTableBase, rateTableCurrencies, ratesFromBase, System.nanoTime());
+        recordSnapshot(ratesFromBase);
+        return rateTable;
+    }
+
+    // Keeps today's rates in the historical store, so past expenses can later be converted offline.
+    private void recordSnapshot(Map<String, Double> ratesFromBase) {
+        HistoricalRateStore store = historicalRates;
+        if (store == null || !store.getBaseCurrency().equals(rateTableBase)) {
+            return;
+        }
+        try {
+            store.addSnapshot(LocalDate.now(), ratesFromBase);
+        } catch (IOException e) {
+            System.out.println("Today's exchange rates could not be recorded: " + e.getMessage());
+        }
+    }
+
+    // Returns a rate table that is younger than the TTL, refreshing it if needed, or null if the mode is off.
+    private RateTable currentRateTable() throws IOException {
+        RateTable table = rateTable;
+        if (table != null && System.nanoTime() - table.getFetchedAt() < rateCache.getTtl().toNanos()) {
+            return table;
+        }
+        synchronized (this) {
+            if (rateTableBase == null) {
+                return null;
+            }
+            table = rateTable;
+            if (table != null && System.nanoTime() - table.getFetchedAt() < rateCache.getTtl().toNanos()) {
+                return table; // Another thread refreshed it while we were waiting.
+            }
+            return refreshRateTable();
+        }
+    }
 
     /**
      * Displays the currency of an expense as a different currency using an API
@@ -23,25 +207,176 @@ public class ExpenseService {
      * @throws IOException if there is an issue with the currency conversion API
      */
     public double displayExpenseAs(Expense expense, String targetCurrency) throws IOException {
-        String apiKey = System.getenv("EXCHANGE_RATE_API_KEY"); // Stored in the system's environmental variables.
-        if (apiKey == null) {
-            throw new IllegalStateException("API key not found in environment variables");
+        long start = System.nanoTime();
+        try {
+            double historicalRate = getHistoricalRate(expense.getCurrency(), targetCurrency, parseDate(expense));
+            if (!Double.isNaN(historicalRate)) {
+                return expense.getAmount() * historicalRate;
+            }
+            return expense.getAmount() * getConversionRate(expense.getCurrency(), targetCurrency);
+        } catch (IOException | RuntimeException e) {
+            CONVERSION_ERRORS.increment();
+            throw e;
+        } finally {
+            CONVERSION_LATENCY.recordSince(start);
         }
-        String apiUrl = String.format("https://v6.exchangerate-api.com/v6/%s/pair/%s/%s",
-                apiKey, expense.getCurrency(), targetCurrency);
+    }
 
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-        HttpGet request = new HttpGet(apiUrl);
-        HttpResponse response = httpClient.execute(request);
-        HttpEntity entity = response.getEntity();
+    // Returns the date of an expense, or null if it cannot be parsed.
+    private static LocalDate parseDate(Expense expense) {
+        try {
+            return LocalDate.parse(expense.getDate(), DATE_FORMATTER);
+        } catch (DateTimeParseException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The non-blocking counterpart of {@link #displayExpenseAs(Expense, String)}.
+     *
+     * @param expense        the expense to convert
+     * @param targetCurrency the new amount returned will be in this currency
+     * @return a future completed with the converted amount, or exceptionally if the API call fails
+     */
+    public CompletableFuture<Double> displayExpenseAsAsync(Expense expense, String targetCurrency) {
+        double amount = expense.getAmount();
+        double historicalRate = getHistoricalRate(expense.getCurrency(), targetCurrency, parseDate(expense));
+        if (!Double.isNaN(historicalRate)) {
+            return CompletableFuture.completedFuture(amount * historicalRate);
+        }
+        return getConversionRateAsync(expense.getCurrency(), targetCurrency).thenApply(rate -> amount * rate);
+    }
 
-        if (entity != null) {
-            String result = EntityUtils.toString(entity);
-            JSONObject json = new JSONObject(result);
-            double conversionRate = json.getDouble("conversion_rate");
-            return expense.getAmount() * conversionRate;
+    /**
+     * Converts many expenses at once. The rates are looked up concurrently, and each distinct
+     * currency pair is requested only once, so the whole batch takes about one API round trip.
+     *
+     * @param expenses       the expenses to convert
+     * @param targetCurrency the new amounts returned will be in this currency
+     * @return a future completed with the converted amounts, in the same order as the expenses
+     */
+    public CompletableFuture<List<Double>> displayExpensesAsAsync(List<Expense> expenses, String targetCurrency) {
+        List<CompletableFuture<Double>> conversions = new ArrayList<>(expenses.size());
+        for (Expense expense : expenses) {
+            conversions.add(displayExpenseAsAsync(expense, targetCurrency));
         }
-        return 0; // Return 0 or an appropriate value in case of failure
+        return CompletableFuture.allOf(conversions.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<Double> amounts = new ArrayList<>(conversions.size());
+            for (CompletableFuture<Double> conversion : conversions) {
+                amounts.add(conversion.join());
+            }
+            return amounts;
+        });
+    }
+
+    /**
+     * Looks up a conversion rate on the service's bounded executor. Concurrent requests for the
+     * same pair share a single lookup instead of each calling the API.
+     *
+     * @param sourceCurrency the currency to convert from
+     * @param targetCurrency the currency to convert to
+     * @return a future completed with the rate, or exceptionally if the API call fails
+     */
+    public CompletableFuture<Double> getConversionRateAsync(String sourceCurrency, String targetCurrency) {
+        if (sourceCurrency.equals(targetCurrency)) {
+            return CompletableFuture.completedFuture(1.0);
+        }
+        String pair = sourceCurrency + "/" + targetCurrency;
+        CompletableFuture<Double> lookup = inFlightRates.get(pair);
+        if (lookup != null) {
+            return lookup;
+        }
+        CompletableFuture<Double> newLookup = new CompletableFuture<>();
+        lookup = inFlightRates.putIfAbsent(pair, newLookup);
+        if (lookup != null) {
+            return lookup; // Another caller started the same lookup first.
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    newLookup.complete(getConversionRate(sourceCurrency, targetCurrency));
+                } catch (IOException | RuntimeException e) {
+                    newLookup.completeExceptionally(e);
+                } finally {
+                    inFlightRates.remove(pair, newLookup);
+                }
+            });
+        } catch (RuntimeException e) { // The executor rejects work once the service is closed.
+            inFlightRates.remove(pair, newLookup);
+            newLookup.completeExceptionally(e);
+        }
+        return newLookup;
+    }
+
+    /**
+     * Waits for a future returned by one of the asynchronous methods, turning a failed API call back into an IOException.
+     * The wait can be interrupted, e.g. when the GUI cancels a calculation that is no longer needed.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an exchange rate");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the rate to convert one unit of the source currency into the target currency.
+     * Rates are served from the cache while they are fresh, so only the first lookup of a pair
+     * (and the first one after its entry expires) goes to the API.
+     *
+     * @param sourceCurrency the currency to convert from
+     * @param targetCurrency the currency to convert to
+     * @return the conversion rate, or 0 if the API did not return one
+     * @throws IOException if there is an issue with the currency conversion API
+     */
+    public double getConversionRate(String sourceCurrency, String targetCurrency) throws IOException {
+        if (sourceCurrency.equals(targetCurrency)) {
+            return 1.0;
+        }
+        RateFetchEvent event = new RateFetchEvent();
+        event.begin();
+        if (rateTableBase != null) {
+            RateTable previousTable = rateTable;
+            RateTable table = currentRateTable();
+            double tableRate = table == null ? Double.NaN : table.getRate(sourceCurrency, targetCurrency);
+            if (!Double.isNaN(tableRate)) {
+                return recordFetch(event, sourceCurrency, targetCurrency, RateFetchEvent.RATE_TABLE, table == previousTable, tableRate);
+            }
+            // Pairs that the table does not cover fall back to the per-pair lookup below.
+        }
+        Double cachedRate = rateCache.get(sourceCurrency, targetCurrency);
+        if (cachedRate != null) {
+            return recordFetch(event, sourceCurrency, targetCurrency, RateFetchEvent.CACHE, true, cachedRate);
+        }
+        double conversionRate = rateProvider.getRate(sourceCurrency, targetCurrency);
+        if (conversionRate > 0) { // Failed lookups are not cached, so they are retried next time.
+            rateCache.put(sourceCurrency, targetCurrency, conversionRate);
+        }
+        return recordFetch(event, sourceCurrency, targetCurrency, RateFetchEvent.API, false, conversionRate);
+    }
+
+    // Commits the flight recorder event of a lookup; the fields are only filled in while it is being recorded.
+    private static double recordFetch(RateFetchEvent event, String sourceCurrency, String targetCurrency, String source, boolean cacheHit, double rate) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.sourceCurrency = sourceCurrency;
+            event.targetCurrency = targetCurrency;
+            event.source = source;
+            event.cacheHit = cacheHit;
+            event.rate = rate;
+            event.commit();
+        }
+        return rate;
     }
 
     /**
@@ -60,4 +395,19 @@ public class ExpenseService {
             expense.setCurrency(targetCurrency);
         }
     }
+
+    /**
+     * Stops the asynchronous lookups and closes the rate provider. Rate lookups fail after this is called, and
+     * lookups that were still queued or running fail too, so nobody waiting for one of them waits forever.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow(); // The queued tasks are dropped without running, so their futures are failed below.
+        IOException closed = new IOException("The expense service was closed");
+        for (CompletableFuture<Double> lookup : inFlightRates.values()) {
+            lookup.completeExceptionally(closed);
+        }
+        inFlightRates.clear();
+        rateProvider.close();
+    }
 }
@@ -0,0 +1,59 @@
+package com.example.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A provider that answers from a fixed table of rates instead of a network, e.g. for tests and benchmarks.
+ */
+public class FixedRateProvider implements RateProvider {
+    private final String baseCurrency;
+    private final Map<String, Double> ratesFromBase;
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * @param baseCurrency  the currency the table is quoted against
+     * @param ratesFromBase how many units of each currency one unit of the base currency buys
+     */
+    public FixedRateProvider(String baseCurrency, Map<String, Double> ratesFromBase) {
+        this.baseCurrency = baseCurrency;
+        this.ratesFromBase = new HashMap<>(ratesFromBase);
+        this.ratesFromBase.put(baseCurrency, 1.0);
+    }
+
+    @Override
+    public double getRate(String sourceCurrency, String targetCurrency) {
+        requestCount.incrementAndGet();
+        Double from = ratesFromBase.get(sourceCurrency);
+        Double to = ratesFromBase.get(targetCurrency);
+        if (from == null || to == null) {
+            return 0; // The same value the HTTP provider gives for an unknown pair.
+        }
+        return to / from;
+    }
+
+    @Override
+    public Map<String, Double> getRates(String baseCurrency) {
+        requestCount.incrementAndGet();
+        Double base = ratesFromBase.get(baseCurrency);
+        if (base == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Double> rates = new HashMap<>();
+        for (Map.Entry<String, Double> rate : ratesFromBase.entrySet()) {
+            rates.put(rate.getKey(), rate.getValue() / base);
+        }
+        return rates;
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    // How many times the provider has been asked for rates, which shows how well the caching in front of it works.
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.service;
+
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A local store of daily exchange rate snapshots, so that an expense can be converted with the rate
+ * of the day it was made, without calling the API. Every rate is quoted against one base currency
+ * and cross rates are derived from two lookups.
+ * <p>
+ * The store is a file of fixed-width records sorted by (currency, epoch day), which is read into the heap
+ * and searched with a binary search. Layout: a 16 byte header (magic, version, base currency, record
+ * count) followed by 16 byte records (currency, epoch day, rate from base).
+ */
+public class HistoricalRateStore implements Closeable {
+    private static final int MAGIC = 0x45585248; // "EXRH"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 16;
+    private static final int NO_KEY = -1; // The packed key of a currency code that cannot be stored.
+
+    private final Path file;
+    private final String baseCurrency;
+    private volatile ByteBuffer records; // The record section of the file, as it was last read or written.
+    private volatile int recordCount;
+
+    /**
+     * Opens the store at the given path, creating an empty one if the file does not exist yet.
+     *
+     * @param file         the file the snapshots are kept in
+     * @param baseCurrency the currency rates are quoted against; an existing file keeps its own base
+     * @throws IOException if the file exists but cannot be read or is not a rate store
+     */
+    public HistoricalRateStore(Path file, String baseCurrency) throws IOException {
+        this.file = file;
+        if (Files.exists(file)) {
+            this.baseCurrency = unpackCurrency(load());
+        } else {
+            if (packCurrency(baseCurrency) == NO_KEY) {
+                throw new IllegalArgumentException("Invalid base currency: " + baseCurrency);
+            }
+            this.baseCurrency = baseCurrency;
+            this.records = ByteBuffer.allocate(0);
+            this.recordCount = 0;
+        }
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public int size() {
+        return recordCount;
+    }
+
+    /**
+     * Looks up the rate of a currency against the base currency on a given day. If there is no snapshot
+     * for that exact day, the most recent earlier snapshot is used.
+     *
+     * @return units of the currency that one unit of the base currency bought, or NaN if there is no snapshot on or before that day
+     */
+    public double getRateFromBase(String currency, long epochDay) {
+        if (baseCurrency.equals(currency)) {
+            return 1.0;
+        }
+        int key = packCurrency(currency);
+        if (key == NO_KEY) {
+            return Double.NaN; // Never stored, so there is no snapshot of it.
+        }
+        ByteBuffer buffer = records;
+        int count = Math.min(recordCount, buffer.capacity() / RECORD_SIZE);
+        // Binary search for the last record that is <= (currency, epochDay).
+        int low = 0;
+        int high = count - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = buffer.getInt(mid * RECORD_SIZE);
+            int midDay = buffer.getInt(mid * RECORD_SIZE + 4);
+            if (midKey < key || (midKey == key && midDay <= epochDay)) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (found < 0 || buffer.getInt(found * RECORD_SIZE) != key) {
+            return Double.NaN;
+        }
+        return buffer.getDouble(found * RECORD_SIZE + 8);
+    }
+
+    /**
+     * @return the rate to convert one unit of the source currency into the target currency on the given date, or NaN if unknown
+     */
+    public double getRate(String sourceCurrency, String targetCurrency, LocalDate date) {
+        if (sourceCurrency.equals(targetCurrency)) {
+            return 1.0;
+        }
+        long epochDay = date.toEpochDay();
+        return getRateFromBase(targetCurrency, epochDay) / getRateFromBase(sourceCurrency, epochDay);
+    }
+
+    /**
+     * Records the rates of one day, replacing any rates already stored for that day.
+     *
+     * @param date          the day the rates apply to
+     * @param ratesFromBase how many units of each currency one unit of the base currency buys
+     * @throws IOException if the store cannot be written
+     */
+    public void addSnapshot(LocalDate date, Map<String, Double> ratesFromBase) throws IOException {
+        TreeMap<LocalDate, Map<String, Double>> snapshots = new TreeMap<>();
+        snapshots.put(date, ratesFromBase);
+        addSnapshots(snapshots);
+    }
+
+    /**
+     * Records the rates of several days at once, rewriting the file only once.
+     */
+    public synchronized void addSnapshots(Map<LocalDate, Map<String, Double>> snapshots) throws IOException {
+        // Merge the existing records with the new ones; TreeMaps keep them sorted by (currency, day).
+        TreeMap<Long, Double> merged = new TreeMap<>();
+        ByteBuffer buffer = records;
+        for (int i = 0; i < recordCount; i++) {
+            merged.put(recordKey(buffer.getInt(i * RECORD_SIZE), buffer.getInt(i * RECORD_SIZE + 4)), buffer.getDouble(i * RECORD_SIZE + 8));
+        }
+        for (Map.Entry<LocalDate, Map<String, Double>> snapshot : snapshots.entrySet()) {
+            int epochDay = (int) snapshot.getKey().toEpochDay();
+            for (Map.Entry<String, Double> rate : snapshot.getValue().entrySet()) {
+                int key = packCurrency(rate.getKey());
+                // Codes that cannot be stored are skipped, so one odd code in a rate table does not lose the others.
+                if (key != NO_KEY && rate.getValue() != null && rate.getValue() > 0 && !rate.getKey().equals(baseCurrency)) {
+                    merged.put(recordKey(key, epochDay), rate.getValue());
+                }
+            }
+        }
+        ByteBuffer written = write(merged);
+        written.position(HEADER_SIZE);
+        records = written.slice();
+        recordCount = merged.size();
+    }
+
+    /**
+     * Imports a CSV dump with one rate per line, in the form "yyyy-MM-dd,currency,rate", quoted against this store's base currency.
+     * A header line and blank lines are skipped.
+     */
+    public void importCsv(Path csvFile) throws IOException {
+        TreeMap<LocalDate, Map<String, Double>> snapshots = new TreeMap<>();
+        List<String> lines = Files.readAllLines(csvFile, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || (i == 0 && line.toLowerCase().startsWith("date"))) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length != 3) {
+                throw new IOException("Invalid rate on line " + (i + 1) + ": " + line);
+            }
+            try {
+                LocalDate date = LocalDate.parse(fields[0].trim());
+                snapshots.computeIfAbsent(date, d -> new TreeMap<>()).put(fields[1].trim(), Double.parseDouble(fields[2].trim()));
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid rate on line " + (i + 1) + ": " + line, e);
+            }
+        }
+        addSnapshots(snapshots);
+    }
+
+    /**
+     * Imports a JSON dump of the form {"base": "JOD", "rates": {"2023-10-01": {"USD": 1.41, ...}, ...}}.
+     * The base currency of the dump must match the store's.
+     */
+    public void importJson(Path jsonFile) throws IOException {
+        JSONObject json = new JSONObject(new String(Files.readAllBytes(jsonFile), StandardCharsets.UTF_8));
+        String dumpBase = json.optString("base", baseCurrency);
+        if (!dumpBase.equals(baseCurrency)) {
+            throw new IOException("Rates are quoted against " + dumpBase + " but the store uses " + baseCurrency);
+        }
+        TreeMap<LocalDate, Map<String, Double>> snapshots = new TreeMap<>();
+        JSONObject days = json.getJSONObject("rates");
+        for (String day : days.keySet()) {
+            JSONObject rates = days.getJSONObject(day);
+            Map<String, Double> snapshot = new TreeMap<>();
+            for (String currency : rates.keySet()) {
+                snapshot.put(currency, rates.getDouble(currency));
+            }
+            snapshots.put(LocalDate.parse(day), snapshot);
+        }
+        addSnapshots(snapshots);
+    }
+
+    @Override
+    public synchronized void close() {
+        records = ByteBuffer.allocate(0);
+        recordCount = 0;
+    }
+
+    // Writes to a temporary file first, so a crash never leaves a half-written store behind. Returns the bytes
+    // that were written, so the new records can be searched without reading the file back.
+    private ByteBuffer write(TreeMap<Long, Double> merged) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + merged.size() * RECORD_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(packCurrency(baseCurrency)).putInt(merged.size());
+        for (Map.Entry<Long, Double> record : merged.entrySet()) {
+            buffer.putInt((int) (record.getKey() >>> 32)).putInt(recordDay(record.getKey())).putDouble(record.getValue());
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return buffer;
+    }
+
+    // Reads the file into the heap and returns the packed base currency from its header. The file is not
+    // memory-mapped, since Windows refuses to replace a file that is still mapped, and the store is replaced on
+    // every snapshot.
+    private int load() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be read");
+            }
+            ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // Keep reading until the whole file is in.
+            }
+            data.flip();
+            if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a historical rate store");
+            }
+            if (data.getInt(4) != VERSION) {
+                throw new IOException("Unsupported rate store version " + data.getInt(4));
+            }
+            int count = data.getInt(12);
+            if ((long) HEADER_SIZE + (long) count * RECORD_SIZE > data.limit()) {
+                throw new IOException(file + " is truncated");
+            }
+            data.position(HEADER_SIZE);
+            records = data.slice();
+            recordCount = count;
+            return data.getInt(8);
+        }
+    }
+
+    // Records are ordered by currency first, then by day, which is the order of this combined key.
+    // Flipping the sign bit of the day keeps days before 1970 sorted before later ones.
+    private static long recordKey(int currency, int epochDay) {
+        return ((long) currency << 32) | ((epochDay ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    private static int recordDay(long recordKey) {
+        return (int) recordKey ^ Integer.MIN_VALUE;
+    }
+
+    // Currency codes are three ASCII characters, so they fit in one int and sort alphabetically. Any other code
+    // cannot be stored, and gets NO_KEY; a wider character would not fit its byte and could collide with another code.
+    private static int packCurrency(String currency) {
+        if (currency == null || currency.length() != 3) {
+            return NO_KEY;
+        }
+        int packed = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = currency.charAt(i);
+            if (c <= ' ' || c > '~') {
+                return NO_KEY;
+            }
+            packed = (packed << 8) | c;
+        }
+        return packed;
+    }
+
+    private static String unpackCurrency(int packed) {
+        return new String(new char[]{(char) ((packed >> 16) & 0xFF), (char) ((packed >> 8) & 0xFF), (char) (packed & 0xFF)});
+    }
+}
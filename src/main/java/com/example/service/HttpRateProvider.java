@@ -0,0 +1,200 @@
+package com.example.service;
+
+import com.example.utils.LatencyHistogram;
+import com.example.utils.Metrics;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Gets rates from ExchangeRate-API (or any server that speaks its v6 protocol, such as {@link StubRateServer}).
+ * All requests share one pooled, keep-alive HTTP client.
+ */
+public class HttpRateProvider implements RateProvider {
+    public static final String API_KEY_VARIABLE = "EXCHANGE_RATE_API_KEY"; // The environment variable the key is read from.
+    public static final String DEFAULT_BASE_URL = "https://v6.exchangerate-api.com/v6/";
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(10);
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
+    private static final Duration DEFAULT_KEEP_ALIVE = Duration.ofSeconds(30);
+    private static final LatencyHistogram REQUEST_LATENCY = Metrics.getDefault().histogram("rates.api.request");
+    private static final Metrics.Counter REQUEST_ERRORS = Metrics.getDefault().counter("rates.api.errors");
+    private static final Metrics.Counter BYTES_RECEIVED = Metrics.getDefault().counter("rates.api.bytes");
+
+    private final String baseUrl;
+    private final String apiKey;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final int maxConcurrentRequests;
+    private final Semaphore requestPermits; // Limits how many rate requests can be outstanding at once.
+    private CloseableHttpClient httpClient; // Created on first use and shared by every request.
+    private boolean closed;
+
+    // Uses the real API, with the key stored in the system's environmental variables.
+    public HttpRateProvider() {
+        this(DEFAULT_BASE_URL, System.getenv(API_KEY_VARIABLE), DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * @param baseUrl               the URL the endpoints are appended to, ending with a slash
+     * @param apiKey                the API key; may be null, in which case every request fails with an IllegalStateException
+     * @param connectTimeout        how long to wait for a connection to be established
+     * @param readTimeout           how long to wait for a response
+     * @param maxConcurrentRequests how many requests may be outstanding at once
+     */
+    public HttpRateProvider(String baseUrl, String apiKey, Duration connectTimeout, Duration readTimeout, int maxConcurrentRequests) {
+        if (baseUrl == null) {
+            throw new IllegalArgumentException("Base URL cannot be null");
+        }
+        if (connectTimeout == null || readTimeout == null) {
+            throw new IllegalArgumentException("Timeouts cannot be null");
+        }
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("At least one concurrent request must be allowed");
+        }
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.apiKey = apiKey;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.requestPermits = new Semaphore(maxConcurrentRequests, true);
+    }
+
+    @Override
+    public double getRate(String sourceCurrency, String targetCurrency) throws IOException {
+        JSONObject json = fetchJson("pair/" + sourceCurrency + "/" + targetCurrency);
+        if (json != null) {
+            return getDouble(json, "conversion_rate");
+        }
+        return 0; // Return 0 or an appropriate value in case of failure
+    }
+
+    @Override
+    public Map<String, Double> getRates(String baseCurrency) throws IOException {
+        JSONObject json = fetchJson("latest/" + baseCurrency);
+        if (json == null) {
+            throw new IOException("The exchange rate API returned an empty response for " + baseCurrency);
+        }
+        Map<String, Double> rates = new HashMap<>();
+        try {
+            JSONObject conversionRates = json.getJSONObject("conversion_rates");
+            for (String currency : conversionRates.keySet()) {
+                rates.put(currency, conversionRates.getDouble(currency));
+            }
+        } catch (JSONException e) {
+            throw new IOException("Unexpected response from the exchange rate API: " + e.getMessage(), e);
+        }
+        return rates;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    private static double getDouble(JSONObject json, String key) throws IOException {
+        try {
+            return json.getDouble(key);
+        } catch (JSONException e) {
+            throw new IOException("Unexpected response from the exchange rate API: " + e.getMessage(), e);
+        }
+    }
+
+    // Calls an endpoint of the exchange rate API, e.g. "pair/USD/JOD" or "latest/JOD", and parses the response.
+    private JSONObject fetchJson(String endpoint) throws IOException {
+        if (apiKey == null) {
+            throw new IllegalStateException("API key not found in environment variables");
+        }
+        String apiUrl = baseUrl + apiKey + "/" + endpoint;
+
+        CloseableHttpClient client = getHttpClient();
+        HttpGet request = new HttpGet(apiUrl);
+        try {
+            requestPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to call the exchange rate API");
+        }
+        long start = System.nanoTime();
+        // Closing the response hands the connection back to the pool so it can be kept alive.
+        try (CloseableHttpResponse response = client.execute(request)) {
+            HttpEntity entity = response.getEntity();
+            int status = response.getStatusLine().getStatusCode();
+            if (status != 200) {
+                EntityUtils.consume(entity);
+                throw new IOException("The exchange rate API responded with HTTP " + status + " for " + endpoint);
+            }
+            if (entity != null) {
+                byte[] body = EntityUtils.toByteArray(entity);
+                BYTES_RECEIVED.add(body.length);
+                String result = new String(body, StandardCharsets.UTF_8);
+                try {
+                    return new JSONObject(result);
+                } catch (JSONException e) {
+                    throw new IOException("Unexpected response from the exchange rate API: " + e.getMessage(), e);
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            REQUEST_ERRORS.increment();
+            throw e;
+        } finally {
+            REQUEST_LATENCY.recordSince(start);
+            requestPermits.release();
+        }
+    }
+
+    private synchronized CloseableHttpClient getHttpClient() {
+        if (closed) {
+            throw new IllegalStateException("HttpRateProvider has been closed");
+        }
+        if (httpClient == null) {
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(maxConcurrentRequests);
+            connectionManager.setDefaultMaxPerRoute(maxConcurrentRequests); // Every request goes to the same host.
+            connectionManager.setValidateAfterInactivity((int) DEFAULT_KEEP_ALIVE.toMillis());
+            RequestConfig requestConfig = RequestConfig.custom()
+                    .setConnectTimeout((int) connectTimeout.toMillis())
+                    .setSocketTimeout((int) readTimeout.toMillis())
+                    .setConnectionRequestTimeout((int) readTimeout.toMillis())
+                    .build();
+            httpClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(requestConfig)
+                    .setKeepAliveStrategy((response, context) -> {
+                        // Honour the server's Keep-Alive header, but never keep an idle connection for longer than the default.
+                        long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                        return keepAlive > 0 ? Math.min(keepAlive, DEFAULT_KEEP_ALIVE.toMillis()) : DEFAULT_KEEP_ALIVE.toMillis();
+                    })
+                    .build();
+        }
+        return httpClient;
+    }
+
+    /**
+     * Closes the pooled HTTP client and its connections. Requests fail after this is called.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (httpClient != null) {
+            httpClient.close();
+            httpClient = null;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * An in-process cache of exchange rates keyed by (source, target) currency pair.
+ * Entries expire after a configurable time-to-live, and the least recently used pair
+ * is evicted once the cache reaches its maximum size.
+ */
+public class RateCache {
+    public static final Duration DEFAULT_TTL = Duration.ofHours(1);
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, CachedRate> rates;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public RateCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+    }
+
+    public RateCache(Duration ttl, int maxEntries) {
+        this(ttl, maxEntries, System::nanoTime);
+    }
+
+    // The clock can be swapped out, which is useful for testing expiry without sleeping.
+    public RateCache(Duration ttl, int maxEntries, LongSupplier clock) {
+        if (ttl == null || ttl.isNegative()) {
+            throw new IllegalArgumentException("TTL must be zero or positive");
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum number of entries must be at least 1");
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        // Access order turns the LinkedHashMap into an LRU list.
+        this.rates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRate> eldest) {
+                if (size() > RateCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks up a cached rate.
+     *
+     * @return the rate, or null if the pair is not cached or its entry has expired
+     */
+    public synchronized Double get(String sourceCurrency, String targetCurrency) {
+        String key = key(sourceCurrency, targetCurrency);
+        CachedRate cached = rates.get(key);
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        if (clock.getAsLong() - cached.storedAt >= ttlNanos) {
+            rates.remove(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        return cached.rate;
+    }
+
+    public synchronized void put(String sourceCurrency, String targetCurrency, double rate) {
+        rates.put(key(sourceCurrency, targetCurrency), new CachedRate(rate, clock.getAsLong()));
+    }
+
+    public synchronized void invalidateAll() {
+        rates.clear();
+    }
+
+    public synchronized int size() {
+        return rates.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public Duration getTtl() {
+        return Duration.ofNanos(ttlNanos);
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    private static String key(String sourceCurrency, String targetCurrency) {
+        return sourceCurrency + "/" + targetCurrency;
+    }
+
+    private static final class CachedRate {
+        private final double rate;
+        private final long storedAt;
+
+        private CachedRate(double rate, long storedAt) {
+            this.rate = rate;
+            this.storedAt = storedAt;
+        }
+    }
+}
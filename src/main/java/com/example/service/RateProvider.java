@@ -0,0 +1,32 @@
+package com.example.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A source of exchange rates for {@link ExpenseService}. The service adds caching, rate tables and
+ * historical rates on top, so a provider only has to answer the two questions below.
+ */
+public interface RateProvider extends Closeable {
+
+    /**
+     * @param sourceCurrency the currency to convert from
+     * @param targetCurrency the currency to convert to
+     * @return the rate to convert one unit of the source currency into the target currency, or 0 if there is none
+     * @throws IOException if the rate cannot be retrieved
+     */
+    double getRate(String sourceCurrency, String targetCurrency) throws IOException;
+
+    /**
+     * @param baseCurrency the currency to quote the rates against
+     * @return how many units of each known currency one unit of the base currency buys
+     * @throws IOException if the rates cannot be retrieved
+     */
+    Map<String, Double> getRates(String baseCurrency) throws IOException;
+
+    // Providers that hold no resources do not need to override this.
+    @Override
+    default void close() throws IOException {
+    }
+}
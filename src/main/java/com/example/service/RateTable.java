@@ -0,0 +1,88 @@
+package com.example.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A matrix of cross rates between a fixed list of currencies, derived from a single table of
+ * rates against one base currency. Currencies are addressed by their ordinal in that list,
+ * so a lookup is two array reads instead of an API call.
+ */
+public class RateTable {
+    private final String baseCurrency;
+    private final String[] currencies;
+    private final Map<String, Integer> ordinals;
+    private final double[][] rates; // rates[from][to] converts one unit of "from" into "to".
+    private final long fetchedAt;
+
+    private RateTable(String baseCurrency, String[] currencies, double[][] rates, long fetchedAt) {
+        this.baseCurrency = baseCurrency;
+        this.currencies = currencies;
+        this.rates = rates;
+        this.fetchedAt = fetchedAt;
+        this.ordinals = new HashMap<>();
+        for (int i = 0; i < currencies.length; i++) {
+            ordinals.put(currencies[i], i);
+        }
+    }
+
+    /**
+     * Builds the cross-rate matrix for the given currencies.
+     *
+     * @param baseCurrency  the currency the rates are quoted against
+     * @param currencies    the currencies to include, in ordinal order
+     * @param ratesFromBase how many units of each currency one unit of the base currency buys
+     * @param fetchedAt     when the rates were fetched, in System.nanoTime() units
+     * @return the rate table; pairs involving a currency missing from ratesFromBase are NaN
+     */
+    public static RateTable fromBaseRates(String baseCurrency, String[] currencies, Map<String, Double> ratesFromBase, long fetchedAt) {
+        String[] codes = currencies.clone();
+        int n = codes.length;
+        double[] fromBase = new double[n];
+        for (int i = 0; i < n; i++) {
+            Double rate = codes[i].equals(baseCurrency) ? Double.valueOf(1.0) : ratesFromBase.get(codes[i]);
+            fromBase[i] = rate != null && rate > 0 ? rate : Double.NaN;
+        }
+        double[][] matrix = new double[n][n];
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                matrix[from][to] = from == to ? 1.0 : fromBase[to] / fromBase[from];
+            }
+        }
+        return new RateTable(baseCurrency, codes, matrix, fetchedAt);
+    }
+
+    // Returns the ordinal of a currency in this table, or -1 if the table does not cover it.
+    public int ordinalOf(String currency) {
+        Integer ordinal = ordinals.get(currency);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    public double getRate(int fromOrdinal, int toOrdinal) {
+        return rates[fromOrdinal][toOrdinal];
+    }
+
+    /**
+     * @return the rate between two currencies, or NaN if the table does not cover the pair
+     */
+    public double getRate(String sourceCurrency, String targetCurrency) {
+        int from = ordinalOf(sourceCurrency);
+        int to = ordinalOf(targetCurrency);
+        if (from < 0 || to < 0) {
+            return Double.NaN;
+        }
+        return rates[from][to];
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public String[] getCurrencies() {
+        return currencies.clone();
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A provider that never goes online: it answers with the most recent rate in a {@link HistoricalRateStore},
+ * e.g. for reports on a machine without an API key. A pair the store has no rate for fails with an IOException
+ * instead of being converted at 0.
+ */
+public class StoredRateProvider implements RateProvider {
+    private final HistoricalRateStore store;
+
+    /**
+     * @param store the stored rates; may be null, in which case only same-currency conversions succeed
+     */
+    public StoredRateProvider(HistoricalRateStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public double getRate(String sourceCurrency, String targetCurrency) throws IOException {
+        if (sourceCurrency.equals(targetCurrency)) {
+            return 1.0;
+        }
+        double rate = store == null ? Double.NaN : store.getRate(sourceCurrency, targetCurrency, LocalDate.now());
+        if (Double.isNaN(rate) || rate <= 0) {
+            throw new IOException("No stored exchange rate from " + sourceCurrency + " to " + targetCurrency);
+        }
+        return rate;
+    }
+
+    // The store cannot list its currencies, so rate tables fall back to the per-pair lookups above.
+    @Override
+    public Map<String, Double> getRates(String baseCurrency) {
+        return Collections.emptyMap();
+    }
+}
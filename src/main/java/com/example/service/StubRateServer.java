@@ -0,0 +1,157 @@
+package com.example.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An embedded HTTP server on the loopback interface that imitates the ExchangeRate-API v6 endpoints,
+ * answering from a fixed table of rates. Latency and failures can be injected, so the conversion and
+ * totals paths can be load-tested against a slow or failing upstream on a machine with no network.
+ * <p>
+ * As a provider, it sends every request through a real {@link HttpRateProvider}, so the whole HTTP stack is exercised.
+ */
+public class StubRateServer implements RateProvider {
+    private static final String API_KEY = "stub";
+
+    private final FixedRateProvider rates;
+    private final HttpServer server;
+    private final ExecutorService serverThreads;
+    private final HttpRateProvider client;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private volatile Duration latency = Duration.ZERO;
+    private volatile double errorRate;
+
+    /**
+     * Starts the server on a free port.
+     *
+     * @param baseCurrency  the currency the table is quoted against
+     * @param ratesFromBase how many units of each currency one unit of the base currency buys
+     * @throws IOException if the server cannot be started
+     */
+    public StubRateServer(String baseCurrency, Map<String, Double> ratesFromBase) throws IOException {
+        this.rates = new FixedRateProvider(baseCurrency, ratesFromBase);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // Enough threads that injected latency delays requests without queueing them behind each other.
+        this.serverThreads = Executors.newFixedThreadPool(32, runnable -> {
+            Thread thread = new Thread(runnable, "stub-rate-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(serverThreads);
+        server.createContext("/v6/", this::handle);
+        server.start();
+        this.client = new HttpRateProvider(getBaseUrl(), API_KEY, HttpRateProvider.DEFAULT_CONNECT_TIMEOUT,
+                HttpRateProvider.DEFAULT_READ_TIMEOUT, HttpRateProvider.DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    // The URL to give an HttpRateProvider that should talk to this server.
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/v6/";
+    }
+
+    // Every response is delayed by this long.
+    public void setLatency(Duration latency) {
+        this.latency = latency == null ? Duration.ZERO : latency;
+    }
+
+    // The probability, from 0 to 1, that a request fails with HTTP 500.
+    public void setErrorRate(double errorRate) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("Error rate must be between 0 and 1");
+        }
+        this.errorRate = errorRate;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    @Override
+    public double getRate(String sourceCurrency, String targetCurrency) throws IOException {
+        return client.getRate(sourceCurrency, targetCurrency);
+    }
+
+    @Override
+    public Map<String, Double> getRates(String baseCurrency) throws IOException {
+        return client.getRates(baseCurrency);
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    // Serves /v6/{key}/pair/{from}/{to} and /v6/{key}/latest/{base}.
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            long delay = latency.toMillis();
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                errorCount.incrementAndGet();
+                respond(exchange, 500, error("injected-failure"));
+                return;
+            }
+            String[] path = exchange.getRequestURI().getPath().split("/"); // "", "v6", key, endpoint, codes...
+            if (path.length < 5 || !API_KEY.equals(path[2])) {
+                respond(exchange, 404, error("invalid-key"));
+            } else if (path[3].equals("pair") && path.length == 6) {
+                double rate = rates.getRate(path[4], path[5]);
+                if (rate == 0) {
+                    respond(exchange, 404, error("unsupported-code"));
+                } else {
+                    respond(exchange, 200, new JSONObject().put("result", "success").put("base_code", path[4])
+                            .put("target_code", path[5]).put("conversion_rate", rate));
+                }
+            } else if (path[3].equals("latest") && path.length == 5) {
+                Map<String, Double> table = rates.getRates(path[4]);
+                if (table.isEmpty()) {
+                    respond(exchange, 404, error("unsupported-code"));
+                } else {
+                    respond(exchange, 200, new JSONObject().put("result", "success").put("base_code", path[4])
+                            .put("conversion_rates", table));
+                }
+            } else {
+                respond(exchange, 404, error("unknown-endpoint"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        }
+    }
+
+    private static JSONObject error(String type) {
+        return new JSONObject().put("result", "error").put("error-type", type);
+    }
+
+    private static void respond(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.utils;
+
+import com.example.model.ExpenseManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves the ledger in the background after it changes. The first change after a save schedules one save
+ * after a short delay, and every change made until it runs is covered by it, so a burst of edits is written
+ * once. Saves run on a single background thread, never on the Swing event thread.
+ * <p>
+ * The ledger is only saved automatically once it has been loaded or saved by the user, so an empty ledger
+ * never replaces a file that was not loaded yet.
+ */
+public class AutoSaveScheduler implements Closeable {
+    public static final Duration DEFAULT_DELAY = Duration.ofSeconds(2);
+
+    private final ExpenseManager manager;
+    private final long delayNanos;
+    private final ScheduledThreadPoolExecutor executor;
+    private final AtomicBoolean scheduled = new AtomicBoolean(); // True while a save is waiting to run.
+    private volatile boolean closed;
+
+    // Save latency, for the status bar and for tuning the delay.
+    private final AtomicLong saveCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong totalSaveNanos = new AtomicLong();
+    private final AtomicLong maxSaveNanos = new AtomicLong();
+    private volatile long lastSaveNanos;
+    private volatile IOException lastError;
+
+    public AutoSaveScheduler(ExpenseManager manager) {
+        this(manager, DEFAULT_DELAY);
+    }
+
+    public AutoSaveScheduler(ExpenseManager manager, Duration delay) {
+        this.manager = manager;
+        this.delayNanos = delay.toNanos();
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "autosave");
+            thread.setDaemon(true); // The shutdown hook flushes the last changes, see close().
+            return thread;
+        });
+        // On close, a save that is still waiting for its delay is done right away instead, see close().
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    // Called after every change to the ledger. Cheap enough to call for every row of a bulk operation.
+    public void markDirty() {
+        if (!closed && scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::runScheduledSave, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Saves right away on the background thread, e.g. when the user asks for it. The future completes when
+     * the save is done, or exceptionally if it failed.
+     */
+    public CompletableFuture<Void> saveNow() {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            scheduled.set(false); // This save covers any changes a scheduled save was waiting for.
+            try {
+                save(true);
+                result.complete(null);
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    public long getSaveCount() {
+        return saveCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public Duration getLastSaveLatency() {
+        return Duration.ofNanos(lastSaveNanos);
+    }
+
+    public Duration getMaxSaveLatency() {
+        return Duration.ofNanos(maxSaveNanos.get());
+    }
+
+    public Duration getMeanSaveLatency() {
+        long count = saveCount.get();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(totalSaveNanos.get() / count);
+    }
+
+    // The error of the last save that failed, or null if none has failed.
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Stops scheduling and writes any changes that are still waiting, so nothing is lost when the
+     * application exits.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                throw new IOException("The autosave did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the autosave", e);
+        }
+        // A save that was still waiting for its delay was dropped by shutdown(), so it is done here.
+        if (scheduled.getAndSet(false)) {
+            save(false);
+        }
+    }
+
+    private void runScheduledSave() {
+        // Cleared before saving, so that a change made while saving schedules another save.
+        scheduled.set(false);
+        try {
+            save(false);
+        } catch (IOException | RuntimeException e) {
+            // Already counted; the next change schedules another attempt.
+        }
+    }
+
+    private void save(boolean requested) throws IOException {
+        if (!requested && !manager.isTrackingChanges()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            manager.saveExpenses();
+        } catch (IOException e) {
+            failureCount.incrementAndGet();
+            lastError = e;
+            throw e;
+        } catch (RuntimeException e) {
+            failureCount.incrementAndGet();
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        lastSaveNanos = elapsed;
+        totalSaveNanos.addAndGet(elapsed);
+        maxSaveNanos.accumulateAndGet(elapsed, Math::max);
+        saveCount.incrementAndGet();
+    }
+}
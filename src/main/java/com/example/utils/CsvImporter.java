@@ -0,0 +1,246 @@
+package com.example.utils;
+
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Imports expenses in bulk from a CSV file with the columns name, date (dd/MM/yyyy), category, amount and
+ * currency; a header line is skipped. Fields may be quoted, but not span several lines.
+ * <p>
+ * The file is split into chunks at line boundaries, and the chunks are parsed and validated in parallel
+ * with the same rules as a new Expense. Lines that fail are collected with their line number instead of
+ * stopping the import, and the valid rows are added to the ledger in one batch at the end.
+ */
+public class CsvImporter {
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024; // Bytes per chunk.
+    public static final int MAX_REPORTED_ERRORS = 1000; // Errors beyond this are counted but not kept.
+
+    private final int chunkSize;
+
+    public CsvImporter() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public CsvImporter(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    // A line that could not be imported.
+    public static final class LineError {
+        private final long lineNumber;
+        private final String message;
+
+        public LineError(long lineNumber, String message) {
+            this.lineNumber = lineNumber;
+            this.message = message;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Line " + lineNumber + ": " + message;
+        }
+    }
+
+    public static final class Result {
+        private final List<Expense> expenses;
+        private final List<LineError> errors;
+        private final long errorCount;
+        private final Duration elapsed;
+
+        private Result(List<Expense> expenses, List<LineError> errors, long errorCount, Duration elapsed) {
+            this.expenses = expenses;
+            this.errors = errors;
+            this.errorCount = errorCount;
+            this.elapsed = elapsed;
+        }
+
+        // The valid rows, in the order of the file.
+        public List<Expense> getExpenses() {
+            return expenses;
+        }
+
+        public int getImportedCount() {
+            return expenses.size();
+        }
+
+        // The first errors, in the order of the file; see getErrorCount() for how many there were.
+        public List<LineError> getErrors() {
+            return errors;
+        }
+
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        // Lines processed per second, valid or not.
+        public double getRowsPerSecond() {
+            double seconds = elapsed.toNanos() / 1e9;
+            return seconds <= 0 ? 0 : (expenses.size() + errorCount) / seconds;
+        }
+    }
+
+    /**
+     * Parses and validates the file and adds every valid row to the ledger in a single batch.
+     * The elapsed time of the result includes the batch commit.
+     */
+    public Result importInto(Path file, ExpenseManager manager) throws IOException {
+        long start = System.nanoTime();
+        Result parsed = parse(file);
+        manager.addExpenses(parsed.getExpenses());
+        return new Result(parsed.expenses, parsed.errors, parsed.errorCount, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    // Parses and validates the file without adding anything to a ledger.
+    public Result parse(Path file) throws IOException {
+        long start = System.nanoTime();
+        byte[] content = Files.readAllBytes(file);
+        List<int[]> chunks = split(content);
+        List<Chunk> parsed = chunks.parallelStream()
+                .map(bounds -> parseChunk(content, bounds[0], bounds[1]))
+                .collect(Collectors.toList());
+
+        // Line numbers are only known once every chunk has counted its lines.
+        List<Expense> expenses = new ArrayList<>();
+        List<LineError> errors = new ArrayList<>();
+        long errorCount = 0;
+        long firstLine = 1;
+        for (Chunk chunk : parsed) {
+            expenses.addAll(chunk.expenses);
+            for (int i = 0; i < chunk.errorLines.size(); i++) {
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add(new LineError(firstLine + chunk.errorLines.get(i), chunk.errorMessages.get(i)));
+                }
+            }
+            errorCount += chunk.errorLines.size();
+            firstLine += chunk.lineCount;
+        }
+        return new Result(expenses, Collections.unmodifiableList(errors), errorCount, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    // Splits the content into ranges of about chunkSize bytes that end after a line break.
+    private List<int[]> split(byte[] content) {
+        List<int[]> chunks = new ArrayList<>();
+        int from = 0;
+        while (from < content.length) {
+            int to = (int) Math.min(content.length, (long) from + chunkSize);
+            while (to < content.length && content[to - 1] != '\n') {
+                to++;
+            }
+            chunks.add(new int[]{from, to});
+            from = to;
+        }
+        return chunks;
+    }
+
+    private static final class Chunk {
+        private final List<Expense> expenses = new ArrayList<>();
+        private final List<Integer> errorLines = new ArrayList<>(); // Relative to the first line of the chunk.
+        private final List<String> errorMessages = new ArrayList<>();
+        private int lineCount;
+    }
+
+    private Chunk parseChunk(byte[] content, int from, int to) {
+        Chunk chunk = new Chunk();
+        String text = new String(content, from, to - from, StandardCharsets.UTF_8);
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            String line = text.substring(lineStart, lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd);
+            if (from == 0 && chunk.lineCount == 0 && line.startsWith("\uFEFF")) {
+                line = line.substring(1); // A byte order mark, as written by spreadsheet programs.
+            }
+            boolean header = from == 0 && chunk.lineCount == 0 && line.toLowerCase().startsWith("name,");
+            if (!header && !line.trim().isEmpty()) {
+                try {
+                    chunk.expenses.add(parseLine(line));
+                } catch (IllegalArgumentException e) {
+                    chunk.errorLines.add(chunk.lineCount);
+                    chunk.errorMessages.add(e.getMessage());
+                }
+            }
+            chunk.lineCount++;
+            lineStart = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    // Validates a line with the same rules as the Add Expense dialog.
+    private static Expense parseLine(String line) {
+        List<String> fields = splitFields(line);
+        if (fields.size() != 5) {
+            throw new IllegalArgumentException("Expected 5 fields but found " + fields.size());
+        }
+        String name = fields.get(0).trim();
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Missing name");
+        }
+        double amount;
+        try {
+            amount = Double.parseDouble(fields.get(3).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount format: " + fields.get(3));
+        }
+        String currency = fields.get(4).trim().toUpperCase();
+        if (currency.length() != 3) {
+            throw new IllegalArgumentException("Invalid currency: " + fields.get(4));
+        }
+        return new Expense(name, fields.get(1).trim(), fields.get(2).trim(), amount, currency);
+    }
+
+    // Splits a line at commas outside of double quotes; "" inside quotes is a literal quote.
+    private static List<String> splitFields(String line) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -1,36 +1,427 @@
 package com.example.utils;
 
 import com.example.model.Expense;
+import com.example.model.ExpenseStore;
+import com.example.utils.jfr.LedgerIoEvent;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ExpenseFileHandler {
+    // Files written before the binary ledger format had no currency; their amounts were entered in forints.
+    public static final String LEGACY_CURRENCY = "HUF";
+    private static final LatencyHistogram LOAD_LATENCY = Metrics.getDefault().histogram("ledger.load");
+    private static final LatencyHistogram READ_LATENCY = Metrics.getDefault().histogram("ledger.read");
+    private static final LatencyHistogram SAVE_LATENCY = Metrics.getDefault().histogram("ledger.save");
+    private static final LatencyHistogram COMMIT_LATENCY = Metrics.getDefault().histogram("journal.commit");
+    private static final Metrics.Gauge FILE_BYTES = Metrics.getDefault().gauge("ledger.fileBytes");
+    private static final Metrics.Gauge RECORDS = Metrics.getDefault().gauge("ledger.records");
+    private static final Metrics.Gauge JOURNAL_BYTES = Metrics.getDefault().gauge("journal.bytes");
     private final String fileName;
+    private final String legacyFileName; // An old serialized file to migrate from, if the ledger file does not exist yet.
+    // Records the changes since the last snapshot; opened by the first load or save. Volatile, since writers append
+    // to it without the lock of the handler, which a save holds while it writes.
+    private volatile LedgerJournal journal;
+    private LedgerJournal.Sync journalSync = LedgerJournal.Sync.COMMIT;
+    private long compactionThreshold = 1024 * 1024; // Journal size in bytes above which a save writes a new snapshot.
+    private long loadStart; // When openLedger was called, so finishLoad can record how long the whole load took.
+    private LedgerIoEvent loadEvent; // The same for the flight recorder.
 
     public ExpenseFileHandler() {
         // Setting the relative path for my file.
-        fileName = "expenses.ser";
+        fileName = "expenses.ledger";
+        legacyFileName = "expenses.ser";
     }
 
     // Another constructor that takes a fileName as a parameter, which may prove useful for testing.
     public ExpenseFileHandler(String fileName) {
         this.fileName = fileName;
+        this.legacyFileName = null;
     }
 
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Path getJournalFile() {
+        return Paths.get(fileName + ".journal");
+    }
+
+    // The journal changes should be recorded in, or null as long as the ledger has not been loaded or saved.
+    public LedgerJournal getJournal() {
+        return journal;
+    }
+
+    // Whether commits force the journal to disk. Takes effect when the journal is opened next.
+    public synchronized void setJournalSync(LedgerJournal.Sync journalSync) {
+        this.journalSync = journalSync;
+    }
+
+    public synchronized void setCompactionThreshold(long compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    // Saves the expenses in the binary ledger format, see LedgerFile.
     public void saveExpensesToFile(List<Expense> expenses) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(Paths.get(fileName)))) {
-            oos.writeObject(expenses);
+        ExpenseStore store = new ExpenseStore();
+        store.ensureCapacity(expenses.size());
+        for (Expense expense : expenses) {
+            store.add(expense);
+        }
+        saveLedger(store);
+    }
+
+    /**
+     * Writes a full snapshot of the store, without creating an Expense per row, and starts an empty journal
+     * for it. The snapshot gets a new generation, so a journal left over from before is never replayed on top of it.
+     */
+    public synchronized void saveLedger(ExpenseStore store) throws IOException {
+        prepareSnapshot(store).write();
+    }
+
+    // The I/O of a save that is left once the ledger was captured, see prepareSave.
+    public interface PendingSave {
+        void write() throws IOException;
+    }
+
+    /**
+     * The first half of {@link #saveChanges}, for a caller that has to keep the store from changing while it is
+     * captured, but should not keep it from changing while the file is written. This is called while the store
+     * cannot change and only copies it if a snapshot is due; the returned save does the I/O and can run after the
+     * caller released its lock. Changes recorded meanwhile go to the journal of the new snapshot, which is only
+     * created on disk once the snapshot is, so a crash in between still finds the previous snapshot and journal.
+     * <p>
+     * Saves must not overlap: the returned save has to be written before the next one is prepared.
+     */
+    public synchronized PendingSave prepareSave(ExpenseStore store) throws IOException {
+        if (!snapshotDue()) {
+            LedgerJournal current = journal;
+            int records = store.size();
+            return () -> commitJournal(current, records);
+        }
+        return prepareSnapshot(store.copy());
+    }
+
+    // A snapshot is written if changes are not recorded yet, if the last snapshot failed, or if the journal grew too large.
+    private boolean snapshotDue() {
+        return journal == null || !journal.isStarted() || journal.size() > compactionThreshold;
+    }
+
+    // Switches to a pending journal for the next generation; the store must not change until the save is written.
+    private PendingSave prepareSnapshot(ExpenseStore snapshot) throws IOException {
+        LedgerJournal previous = journal;
+        int generation;
+        if (previous == null) {
+            Path file = Paths.get(fileName);
+            generation = (LedgerFile.isLedgerFile(file) ? LedgerFile.readGeneration(file) : 0) + 1;
+        } else {
+            // A pending journal's snapshot was never written, so its generation is still free.
+            generation = previous.isStarted() ? previous.getGeneration() + 1 : previous.getGeneration();
+        }
+        LedgerJournal next = LedgerJournal.createPending(getJournalFile(), generation, journalSync);
+        journal = next;
+        return () -> writeSnapshot(snapshot, previous, next);
+    }
+
+    // Writes the snapshot and then creates the file of its journal. Writers keep appending to the pending journal meanwhile.
+    private synchronized void writeSnapshot(ExpenseStore snapshot, LedgerJournal previous, LedgerJournal next) throws IOException {
+        long start = System.nanoTime();
+        LedgerIoEvent event = new LedgerIoEvent();
+        event.begin();
+        Path file = Paths.get(fileName);
+        if (previous != null) {
+            previous.close(); // Its records are in the snapshot too, but until the snapshot is written they are what is on disk.
+        }
+        LedgerFile.write(snapshot, file, next.getGeneration());
+        next.start(); // Replaces the previous journal, whose generation no longer matches the snapshot anyway.
+        SAVE_LATENCY.recordSince(start);
+        recordSizes(file, snapshot.size());
+        commitEvent(event, LedgerIoEvent.SAVE, file, snapshot.size());
+    }
+
+    private synchronized void commitJournal(LedgerJournal current, int records) throws IOException {
+        long start = System.nanoTime();
+        LedgerIoEvent event = new LedgerIoEvent();
+        event.begin();
+        current.commit();
+        COMMIT_LATENCY.recordSince(start);
+        RECORDS.set(records);
+        JOURNAL_BYTES.set(current.size());
+        commitEvent(event, LedgerIoEvent.COMMIT, getJournalFile(), records);
+    }
+
+    // Commits a flight recorder event; the fields are only filled in while it is being recorded.
+    private void commitEvent(LedgerIoEvent event, String operation, Path file, int records) throws IOException {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.file = file.toString();
+            event.records = records;
+            event.fileSize = Files.exists(file) ? Files.size(file) : 0;
+            event.journalSize = journal == null ? 0 : journal.size();
+            event.commit();
+        }
+    }
+
+    // Updates the gauges that describe the ledger on disk.
+    private void recordSizes(Path file, int records) throws IOException {
+        FILE_BYTES.set(Files.size(file));
+        RECORDS.set(records);
+        JOURNAL_BYTES.set(journal == null ? 0 : journal.size());
+    }
+
+    /**
+     * Saves the changes recorded in the journal since the last save, which costs as much as the changes and not
+     * as much as the ledger. A full snapshot is written instead if there is no journal yet, or if the journal
+     * has grown past the compaction threshold.
+     */
+    public synchronized void saveChanges(ExpenseStore store) throws IOException {
+        if (snapshotDue()) {
+            saveLedger(store);
+        } else {
+            commitJournal(journal, store.size());
         }
     }
 
     public List<Expense> loadExpensesFromFile() throws IOException, ClassNotFoundException {
-        List<Expense> expenses;
-        try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(Paths.get(fileName)))) {
-            expenses = (List<Expense>) ois.readObject();
+        ExpenseStore store = new ExpenseStore();
+        loadLedger(store);
+        return new ArrayList<>(store.asList());
+    }
+
+    /**
+     * Loads the ledger file into a store with one bulk read, replays the journal on top of it and opens the
+     * journal for the changes that follow. An old serialized file is migrated to the ledger format first.
+     *
+     * @return the number of expenses in the store afterwards
+     */
+    public synchronized int loadLedger(ExpenseStore store) throws IOException, ClassNotFoundException {
+        try (LedgerFile.Reader reader = openLedger()) {
+            reader.readPage(store, reader.getRowCount());
+            finishLoad(store, reader.getGeneration());
+        }
+        return store.size();
+    }
+
+    /**
+     * Reads the ledger and the changes in its journal into a store without writing anything: an old serialized
+     * file is read as it is instead of being migrated, and the journal is not opened for changes. This is for
+     * read-only uses such as reports, which may run while the tracker itself has the ledger open.
+     *
+     * @return the number of expenses in the store afterwards
+     */
+    public synchronized int readLedger(ExpenseStore store) throws IOException, ClassNotFoundException {
+        long start = System.nanoTime();
+        LedgerIoEvent event = new LedgerIoEvent();
+        event.begin();
+        Path file = Paths.get(fileName);
+        if (!Files.exists(file) && legacyFileName != null && Files.exists(Paths.get(legacyFileName))) {
+            file = Paths.get(legacyFileName);
+        }
+        if (!LedgerFile.isLedgerFile(file)) {
+            List<Expense> expenses = readSerialized(file);
+            store.ensureCapacity(expenses.size());
+            for (Expense expense : expenses) {
+                store.add(expense);
+            }
+        } else {
+            try (LedgerFile.Reader reader = LedgerFile.open(file)) {
+                reader.readPage(store, reader.getRowCount());
+                LedgerJournal.replay(getJournalFile(), reader.getGeneration(), store);
+            }
+        }
+        READ_LATENCY.recordSince(start);
+        commitEvent(event, LedgerIoEvent.READ, file, store.size());
+        return store.size();
+    }
+
+    /**
+     * Opens the snapshot for reading it page by page, see {@link LedgerFile.Reader}. An old serialized file is
+     * migrated to the ledger format first, once: either the file itself, which is copied to a backup first, or
+     * the legacy file next to it if there is no ledger yet, which is left as it is. Changes stop being recorded until {@link #finishLoad} is called, so that a ledger that
+     * is only partly loaded is never saved over the file.
+     */
+    public synchronized LedgerFile.Reader openLedger() throws IOException, ClassNotFoundException {
+        loadStart = System.nanoTime();
+        loadEvent = new LedgerIoEvent();
+        loadEvent.begin();
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        Path file = Paths.get(fileName);
+        if (!Files.exists(file) && legacyFileName != null && Files.exists(Paths.get(legacyFileName))) {
+            migrate(Paths.get(legacyFileName), file);
+        } else if (Files.exists(file) && !LedgerFile.isLedgerFile(file)) {
+            // The serialized file is the user's only copy, so it is kept in case the migration gets something wrong.
+            Files.copy(file, backupFileOf(file), StandardCopyOption.COPY_ATTRIBUTES);
+            migrate(file, file);
+        }
+        return LedgerFile.open(file);
+    }
+
+    /**
+     * Replays the journal on a store that holds every row of the snapshot with the given generation, and opens
+     * the journal for the changes that follow.
+     *
+     * @return the number of journal records that were replayed; if it is not 0, rows may have changed or moved
+     */
+    public synchronized int finishLoad(ExpenseStore store, int generation) throws IOException {
+        int replayed = LedgerJournal.replay(getJournalFile(), generation, store);
+        journal = LedgerJournal.open(getJournalFile(), generation, journalSync);
+        LOAD_LATENCY.recordSince(loadStart);
+        recordSizes(Paths.get(fileName), store.size());
+        if (loadEvent != null) {
+            commitEvent(loadEvent, LedgerIoEvent.LOAD, Paths.get(fileName), store.size());
+            loadEvent = null;
+        }
+        return replayed;
+    }
+
+    /**
+     * Streams the expenses of the ledger file without loading the whole ledger: rows are read one page at a time
+     * into a small buffer and handed out as detached copies. If the journal has changes that are not in the
+     * snapshot yet, the ledger is loaded first so that the stream includes them. The stream has to be closed.
+     */
+    public Stream<Expense> streamExpenses() throws IOException, ClassNotFoundException {
+        LedgerFile.Reader reader = openSnapshotForStreaming();
+        if (reader == null) {
+            ExpenseStore store = new ExpenseStore();
+            loadLedger(store);
+            return store.asList().stream();
+        }
+        return StreamSupport.stream(new PageSpliterator(reader), false).onClose(reader::close);
+    }
+
+    // Opens the snapshot if it can be streamed as it is, or returns null if journal records have to be applied to it.
+    private synchronized LedgerFile.Reader openSnapshotForStreaming() throws IOException {
+        Path file = Paths.get(fileName);
+        if (!LedgerFile.isLedgerFile(file)) {
+            return null; // Still has to be migrated.
+        }
+        LedgerFile.Reader reader = LedgerFile.open(file);
+        ExpenseStore probe = new ExpenseStore();
+        if (LedgerJournal.replay(getJournalFile(), reader.getGeneration(), probe) > 0) {
+            reader.close();
+            return null;
+        }
+        return reader;
+    }
+
+    // The first of "expenses.ser.bak", "expenses.ser.1.bak", ... that does not exist yet, so no backup is overwritten.
+    private static Path backupFileOf(Path file) {
+        String name = file.getFileName().toString();
+        Path backup = file.resolveSibling(name + ".bak");
+        for (int i = 1; Files.exists(backup); i++) {
+            backup = file.resolveSibling(name + "." + i + ".bak");
+        }
+        return backup;
+    }
+
+    /**
+     * Converts a file written with Java serialization, by this version or by the first releases of the
+     * tracker, into the binary ledger format. The old file is left as it is unless both paths are the same.
+     *
+     * @return the number of expenses that were migrated
+     */
+    public static int migrate(Path serializedFile, Path ledgerFile) throws IOException, ClassNotFoundException {
+        List<Expense> expenses = readSerialized(serializedFile);
+        ExpenseStore store = new ExpenseStore();
+        store.ensureCapacity(expenses.size());
+        for (Expense expense : expenses) {
+            store.add(expense);
+        }
+        LedgerFile.write(store, ledgerFile);
+        return expenses.size();
+    }
+
+    private static List<Expense> readSerialized(Path file) throws IOException, ClassNotFoundException {
+        Object contents;
+        try (ObjectInputStream ois = new LegacyObjectInputStream(Files.newInputStream(file))) {
+            contents = ois.readObject();
+        }
+        if (!(contents instanceof List)) {
+            throw new IOException(file + " does not contain a list of expenses");
+        }
+        List<Expense> expenses = new ArrayList<>();
+        for (Object item : (List<?>) contents) {
+            if (item instanceof Expense) {
+                expenses.add((Expense) item);
+            } else if (item instanceof com.example.utils.legacy.Expense) {
+                com.example.utils.legacy.Expense old = (com.example.utils.legacy.Expense) item;
+                expenses.add(new Expense(old.getName(), old.getDate(), old.getCategory(), old.getAmount(), LEGACY_CURRENCY));
+            } else {
+                throw new IOException(file + " contains an unexpected " + (item == null ? "null" : item.getClass().getName()));
+            }
         }
         return expenses;
     }
-}
\ No newline at end of file
+
+    // Hands out the rows of a ledger file page by page, reusing one store as the buffer for the current page.
+    private static final class PageSpliterator implements Spliterator<Expense> {
+        private static final int PAGE_SIZE = 4096;
+        private final LedgerFile.Reader reader;
+        private final ExpenseStore page = new ExpenseStore();
+        private int next;
+
+        private PageSpliterator(LedgerFile.Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Expense> action) {
+            if (next == page.size()) {
+                page.clearRows(); // The dictionaries are kept, so each name is only decoded once.
+                next = 0;
+                try {
+                    if (reader.readPage(page, PAGE_SIZE) == 0) {
+                        return false;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            action.accept(page.get(next++));
+            return true;
+        }
+
+        @Override
+        public Spliterator<Expense> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return reader.getRowCount() - reader.getPosition() + (page.size() - next);
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | NONNULL;
+        }
+    }
+
+    // Resolves the expense class of the first releases, which was in the default package, to its stand-in.
+    private static final class LegacyObjectInputStream extends ObjectInputStream {
+        private LegacyObjectInputStream(InputStream in) throws IOException {
+            super(new BufferedInputStream(in));
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if ("Expense".equals(desc.getName())) {
+                return com.example.utils.legacy.Expense.class;
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.utils;
+
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.model.ExpenseStore;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the ledger, or the expenses of one month or one category, as CSV or JSON. The ledger is read one
+ * page of rows at a time into a small buffer and written through a buffer, so no Expense objects or lists are
+ * created and memory use does not depend on the size of the ledger. The CSV format is the one CsvImporter reads.
+ * <p>
+ * Each page is read under the optimistic read of the manager and written without any lock, so the ledger can be
+ * edited while an export runs. Every page is consistent, but an edit made between two pages may or may not be
+ * in the file. An export should run on a background thread, and can be cancelled by interrupting that thread.
+ */
+public class LedgerExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PAGE_SIZE = 16 * 1024; // Rows of the ledger looked at per page, with a progress report after each.
+
+    public enum Format {
+        CSV, JSON
+    }
+
+    // Told how far an export is; called from the exporting thread.
+    public interface ProgressListener {
+        void progress(long rowsWritten, long rowsTotal);
+    }
+
+    // Which rows of the ledger are exported.
+    public static final class Slice {
+        private final int firstDay; // Epoch days, inclusive.
+        private final int lastDay;
+        private final int category; // -1 for every category.
+        private final String description;
+
+        private Slice(int firstDay, int lastDay, int category, String description) {
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.category = category;
+            this.description = description;
+        }
+
+        public static Slice all() {
+            return new Slice(Integer.MIN_VALUE, Integer.MAX_VALUE, -1, "all expenses");
+        }
+
+        public static Slice month(YearMonth yearMonth) {
+            return new Slice((int) yearMonth.atDay(1).toEpochDay(), (int) yearMonth.atEndOfMonth().toEpochDay(), -1, yearMonth.toString());
+        }
+
+        public static Slice category(String categoryName) {
+            int category = Expense.categoryOrdinal(categoryName);
+            if (category < 0) {
+                throw new IllegalArgumentException("Invalid category");
+            }
+            return new Slice(Integer.MIN_VALUE, Integer.MAX_VALUE, category, ExpenseManager.CATEGORIES[category]);
+        }
+
+        private boolean contains(ExpenseStore store, int row) {
+            int epochDay = store.getEpochDay(row);
+            return epochDay >= firstDay && epochDay <= lastDay && (category < 0 || store.getCategoryOrdinal(row) == category);
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    // The format a file name asks for: JSON for .json or .json.gz, CSV otherwise.
+    public static Format formatOf(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".json") || name.endsWith(".json.gz") ? Format.JSON : Format.CSV;
+    }
+
+    /**
+     * Exports to a file. The file is written to a temporary file first and moved into place when the export
+     * is complete, so a failed or cancelled export leaves nothing behind. Output is gzip-compressed if asked
+     * for, or if the file name ends with .gz.
+     *
+     * @return the number of rows that were exported
+     */
+    public long export(ExpenseManager manager, Slice slice, Format format, Path file, boolean gzip, ProgressListener listener) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        long rows;
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                boolean compress = gzip || file.getFileName().toString().endsWith(".gz");
+                rows = export(manager, slice, format, compress ? new GZIPOutputStream(out, BUFFER_SIZE) : out, listener);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return rows;
+    }
+
+    /**
+     * Exports to a stream, which is flushed but not closed, except that a GZIPOutputStream is finished.
+     *
+     * @return the number of rows that were exported
+     */
+    public long export(ExpenseManager manager, Slice slice, Format format, OutputStream out, ProgressListener listener) throws IOException {
+        Writer writer = new OutputStreamWriter(new BufferedOutputStream(out, BUFFER_SIZE), StandardCharsets.UTF_8);
+        long total = countRows(manager, slice);
+        long written = 0;
+        writer.write(format == Format.CSV ? "Name,Date,Category,Amount,Currency\n" : "[");
+        ExpenseStore page = new ExpenseStore(); // Reused for every page, so memory does not grow with the ledger.
+        int nextRow = 0;
+        long lastId = 0;
+        boolean done = false;
+        while (!done) {
+            long[] position = readPage(manager, slice, page, nextRow, lastId);
+            nextRow = (int) position[0];
+            lastId = position[1];
+            done = position[2] != 0;
+            for (int row = 0; row < page.size(); row++) {
+                if (format == Format.CSV) {
+                    writeCsvRow(writer, page, row);
+                } else {
+                    writeJsonRow(writer, page, row, written == 0);
+                }
+                written++;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("The export was cancelled");
+            }
+            if (listener != null && !done) {
+                listener.progress(written, Math.max(total, written));
+            }
+        }
+        if (format == Format.JSON) {
+            writer.write(written == 0 ? "]\n" : "\n]\n");
+        }
+        if (listener != null) {
+            listener.progress(written, written);
+        }
+        writer.flush();
+        if (out instanceof GZIPOutputStream) {
+            ((GZIPOutputStream) out).finish();
+        }
+        return written;
+    }
+
+    /**
+     * Copies the rows of the slice among the next PAGE_SIZE rows of the ledger into the page, under the optimistic
+     * read of the manager: if a writer got in between, the page is read again, under the read lock if need be. So a
+     * page is always consistent, and writers are only held up for as long as one page takes to copy, never by I/O.
+     * The page starts after the row with lastId, which finds the right row even if earlier rows were removed since
+     * the last page; if that row was removed itself, it starts at nextRow.
+     *
+     * @return the row after the page, the id of the last row that was looked at, and 1 if the ledger ended there
+     */
+    private static long[] readPage(ExpenseManager manager, Slice slice, ExpenseStore page, int nextRow, long lastId) {
+        return manager.readStore(store -> {
+            page.clear(); // The read may be repeated, so it starts from scratch every time.
+            int previous = lastId == 0 ? -1 : store.rowOf(lastId);
+            int first = previous >= 0 ? previous + 1 : Math.min(nextRow, store.size());
+            int end = Math.min(store.size(), first + PAGE_SIZE);
+            for (int row = first; row < end; row++) {
+                if (slice.contains(store, row)) {
+                    page.addRow(store.getId(row), store.getAmount(row), store.getEpochDay(row), store.getCategoryOrdinal(row),
+                            page.internCurrency(store.getCurrency(row)), page.internName(store.getName(row)));
+                }
+            }
+            return new long[]{end, end > first ? store.getId(end - 1) : lastId, end == store.size() ? 1 : 0};
+        });
+    }
+
+    // Counts the rows of the slice for the progress, a page at a time like the export. Edits made while the export
+    // runs can make the count a little off, so the progress never reports more rows than this.
+    private static long countRows(ExpenseManager manager, Slice slice) {
+        long total = 0;
+        for (int first = 0; ; first += PAGE_SIZE) {
+            int start = first;
+            long[] counted = manager.readStore(store -> {
+                int end = Math.min(store.size(), start + PAGE_SIZE);
+                long count = 0;
+                for (int row = start; row < end; row++) { // A cheap pass over two columns.
+                    if (slice.contains(store, row)) {
+                        count++;
+                    }
+                }
+                return new long[]{count, end == store.size() ? 1 : 0};
+            });
+            total += counted[0];
+            if (counted[1] != 0) {
+                return total;
+            }
+        }
+    }
+
+    private static void writeCsvRow(Writer writer, ExpenseStore store, int row) throws IOException {
+        writeCsvField(writer, store.getName(row));
+        writer.write(',');
+        writer.write(store.getDate(row));
+        writer.write(',');
+        writer.write(store.getCategory(row));
+        writer.write(',');
+        writer.write(Double.toString(store.getAmount(row)));
+        writer.write(',');
+        writeCsvField(writer, store.getCurrency(row));
+        writer.write('\n');
+    }
+
+    // Quotes a field only if it has to be, doubling the quotes inside it.
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+        } else {
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    private static void writeJsonRow(Writer writer, ExpenseStore store, int row, boolean first) throws IOException {
+        writer.write(first ? "\n  {\"id\": " : ",\n  {\"id\": ");
+        writer.write(Long.toString(store.getId(row)));
+        writer.write(", \"name\": ");
+        writer.write(JSONObject.quote(store.getName(row)));
+        writer.write(", \"date\": \"");
+        writer.write(store.getDate(row));
+        writer.write("\", \"category\": \"");
+        writer.write(store.getCategory(row));
+        writer.write("\", \"amount\": ");
+        double amount = store.getAmount(row);
+        writer.write(Double.isFinite(amount) ? Double.toString(amount) : "null");
+        writer.write(", \"currency\": ");
+        writer.write(JSONObject.quote(store.getCurrency(row)));
+        writer.write('}');
+    }
+}
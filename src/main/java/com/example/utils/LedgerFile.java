@@ -0,0 +1,310 @@
+package com.example.utils;
+
+import com.example.model.ExpenseStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The binary ledger format. It is a direct image of the columns of an ExpenseStore, so saving and loading
+ * copy primitives instead of going through reflection, and a file is loaded with one bulk read.
+ * <p>
+ * Layout: a 32 byte header (magic, version, record size, row count, currency count, name count, generation,
+ * offset of the dictionary section), then one 28 byte record per row (id, amount, epoch day, name id, category
+ * ordinal, currency id, 2 bytes padding), then the dictionary section: every currency code and then every
+ * name, each as a length-prefixed UTF-8 string. The ids in the records are positions in the dictionaries.
+ * <p>
+ * The generation is increased by every snapshot that ExpenseFileHandler writes, and ties the snapshot to the
+ * LedgerJournal that records the changes made after it.
+ */
+public final class LedgerFile {
+    private static final int MAGIC = 0x45584C47; // "EXLG"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 28;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private LedgerFile() {
+    }
+
+    // Checks the magic number, so callers can tell a ledger file from an old serialized one.
+    public static boolean isLedgerFile(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // Keep reading until the four bytes are in.
+            }
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    // Reads the generation from the header of a ledger file.
+    public static int readGeneration(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is in.
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a ledger file");
+            }
+            return header.getInt(20);
+        }
+    }
+
+    public static void write(ExpenseStore store, Path file) throws IOException {
+        write(store, file, 0);
+    }
+
+    /**
+     * Writes every row of the store. The file is written to a temporary file first and then moved over
+     * the old one, so a crash never leaves a half-written ledger behind.
+     */
+    public static void write(ExpenseStore store, Path file, int generation) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            Writer out = new Writer(channel);
+            int rows = store.size();
+            out.ensure(HEADER_SIZE);
+            out.buffer.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE)
+                    .putInt(rows).putInt(store.getCurrencyCount()).putInt(store.getNameCount())
+                    .putInt(generation)
+                    .putLong(HEADER_SIZE + (long) rows * RECORD_SIZE);
+            for (int row = 0; row < rows; row++) {
+                out.ensure(RECORD_SIZE);
+                out.buffer.putLong(store.getId(row)).putDouble(store.getAmount(row)).putInt(store.getEpochDay(row))
+                        .putInt(store.getNameId(row)).put((byte) store.getCategoryOrdinal(row))
+                        .put((byte) store.getCurrencyId(row)).putShort((short) 0);
+            }
+            for (int i = 0; i < store.getCurrencyCount(); i++) {
+                out.putString(store.getCurrencyCode(i));
+            }
+            for (int i = 0; i < store.getNameCount(); i++) {
+                out.putString(store.getNameEntry(i));
+            }
+            out.flush();
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a ledger file and appends all of its rows to the store, keeping their ids. Only the
+     * dictionaries create objects; the records are copied straight into the columns.
+     *
+     * @return the number of rows that were read
+     */
+    public static int read(Path file, ExpenseStore store) throws IOException {
+        try (Reader reader = open(file)) {
+            store.ensureCapacity(store.size() + reader.getRowCount());
+            reader.readPage(store, reader.getRowCount());
+            return reader.getRowCount();
+        }
+    }
+
+    /**
+     * Opens a ledger file for reading it page by page. The file is read into the heap and closed here, and
+     * only the header and the dictionaries are decoded; the records are copied into a store by
+     * {@link Reader#readPage}, so a caller can show the first rows before the rest is copied.
+     */
+    public static Reader open(Path file) throws IOException {
+        // Not memory-mapped: Windows refuses to replace a file while a mapping of it is alive, and a mapping is
+        // only released when it is garbage collected, so the next save could fail to move its file into place.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be read");
+            }
+            ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // Keep reading until the whole file is in.
+            }
+            data.flip();
+            return new Reader(file, data);
+        }
+    }
+
+    /**
+     * A cursor over the records of a ledger file that was read into the heap. The records are copied into a
+     * store one page at a time, and the file's bytes are released when the reader is closed. A reader is not
+     * thread-safe.
+     */
+    public static final class Reader implements Closeable {
+        private final Path file;
+        private ByteBuffer data;
+        private final int recordSize;
+        private final int rowCount;
+        private final int generation;
+        private final String[] currencyCodes;
+        private final String[] names;
+        private int nextRow;
+
+        // Dictionary ids of the last store that was read into, filled in as rows refer to them.
+        private ExpenseStore target;
+        private int[] currencyIds;
+        private int[] nameIds;
+
+        private Reader(Path file, ByteBuffer data) throws IOException {
+            this.file = file;
+            this.data = data;
+            if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a ledger file");
+            }
+            if (data.getShort(4) != VERSION) {
+                throw new IOException("Unsupported ledger version " + data.getShort(4));
+            }
+            recordSize = data.getShort(6);
+            rowCount = data.getInt(8);
+            int currencyCount = data.getInt(12);
+            int nameCount = data.getInt(16);
+            generation = data.getInt(20);
+            long dictionaryOffset = data.getLong(24);
+            if (recordSize < RECORD_SIZE || rowCount < 0 || currencyCount < 0 || nameCount < 0
+                    || dictionaryOffset != HEADER_SIZE + (long) rowCount * recordSize || dictionaryOffset > data.limit()) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+            ByteBuffer dictionary = data.duplicate();
+            dictionary.position((int) dictionaryOffset);
+            currencyCodes = new String[currencyCount];
+            for (int i = 0; i < currencyCount; i++) {
+                currencyCodes[i] = readString(dictionary, file);
+            }
+            names = new String[nameCount];
+            for (int i = 0; i < nameCount; i++) {
+                names[i] = readString(dictionary, file);
+            }
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public int getGeneration() {
+            return generation;
+        }
+
+        // The number of rows read so far.
+        public int getPosition() {
+            return nextRow;
+        }
+
+        public boolean hasMoreRows() {
+            return nextRow < rowCount;
+        }
+
+        /**
+         * Appends up to maxRows of the next rows to the store, keeping their ids.
+         *
+         * @return the number of rows that were appended, 0 once every row was read
+         */
+        public int readPage(ExpenseStore store, int maxRows) throws IOException {
+            if (data == null) {
+                throw new IOException("The reader of " + file + " is closed");
+            }
+            if (store != target) {
+                target = store;
+                currencyIds = new int[currencyCodes.length];
+                nameIds = new int[names.length];
+                Arrays.fill(currencyIds, -1);
+                Arrays.fill(nameIds, -1);
+            }
+            int count = Math.min(maxRows, rowCount - nextRow);
+            store.ensureCapacity(store.size() + count);
+            try {
+                for (int i = 0; i < count; i++, nextRow++) {
+                    int offset = HEADER_SIZE + nextRow * recordSize;
+                    int nameId = data.getInt(offset + 20);
+                    int currencyId = data.get(offset + 25) & 0xFF;
+                    if (nameId < 0 || nameId >= names.length || currencyId >= currencyCodes.length) {
+                        throw new IOException(file + " refers to a missing dictionary entry at row " + nextRow);
+                    }
+                    if (nameIds[nameId] < 0) {
+                        nameIds[nameId] = store.internName(names[nameId]);
+                    }
+                    if (currencyIds[currencyId] < 0) {
+                        currencyIds[currencyId] = store.internCurrency(currencyCodes[currencyId]);
+                    }
+                    store.addRow(data.getLong(offset), data.getDouble(offset + 8), data.getInt(offset + 16),
+                            data.get(offset + 24), currencyIds[currencyId], nameIds[nameId]);
+                }
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                throw new IOException(file + " is corrupt: " + e.getMessage(), e);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() {
+            data = null;
+            target = null;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.remaining() < 4) {
+            throw new IOException(file + " is truncated");
+        }
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException(file + " is truncated");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Fills a buffer and writes it out to the channel whenever it runs full.
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(4);
+            buffer.putInt(bytes.length);
+            for (int written = 0; written < bytes.length; ) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, chunk);
+                written += chunk;
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
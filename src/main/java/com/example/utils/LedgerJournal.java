@@ -0,0 +1,364 @@
+package com.example.utils;
+
+import com.example.model.ExpenseStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the changes made to a ledger since its last snapshot, so that saving costs
+ * as much as the changes and not as much as the ledger. Loading reads the snapshot and replays the journal on top.
+ * <p>
+ * Layout: a 12 byte header (magic, version, generation of the snapshot the journal belongs to), then one
+ * record per change: the length of the body, a type byte, the body and a CRC32 of type and body. A record
+ * either stores the full values of an expense under its id, removes an id, or clears the ledger. Replaying
+ * stops at the first record that is incomplete or does not match its checksum, which is what a crash in
+ * the middle of a write leaves behind, and that tail is cut off when the journal is opened again.
+ * <p>
+ * Records are collected in memory and only written out by {@link #commit()}, so appending one never does disk
+ * I/O on the caller's thread, and changes that were never saved are never replayed. Commits from several threads are
+ * grouped: while one thread forces the file to disk, the others queue up behind it, and the next force
+ * covers all of their records at once.
+ */
+public class LedgerJournal implements Closeable {
+    private static final int MAGIC = 0x45584A4E; // "EXJN"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    private static final int RETAINED_BUFFER_SIZE = 1024 * 1024; // A larger buffer, grown by an import, is dropped after a commit.
+
+    // When the journal forces its writes to disk.
+    public enum Sync {
+        NONE,   // Never; the operating system writes the data out when it wants to. A crash of the machine may lose recent commits.
+        COMMIT  // On every commit, grouped across threads.
+    }
+
+    private final Path file;
+    private final int generation;
+    private final Sync sync;
+    private FileChannel channel; // Null until a pending journal is started.
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private int recordStart; // Where the record that is being appended starts in the pending buffer.
+    private final CRC32 crc = new CRC32();
+    private long size; // Bytes in the file, including records that were written but not forced yet.
+    private long appendedCount; // Records appended so far.
+    private long writtenCount; // Records written to the channel so far.
+    private long syncedCount; // Records forced to disk so far. Guarded by syncLock.
+    private final Object syncLock = new Object();
+
+    private LedgerJournal(Path file, int generation, Sync sync, FileChannel channel, long size) {
+        this.file = file;
+        this.generation = generation;
+        this.sync = sync;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    // Creates an empty journal for a snapshot, replacing any journal that was there.
+    public static LedgerJournal create(Path file, int generation, Sync sync) throws IOException {
+        LedgerJournal journal = createPending(file, generation, sync);
+        journal.start();
+        return journal;
+    }
+
+    /**
+     * Creates a journal for a snapshot that is still being written. Records are collected in memory as usual,
+     * but the file is only created by {@link #start()}, so the journal of the previous snapshot stays on disk
+     * until the new snapshot is. It cannot be committed before that.
+     */
+    public static LedgerJournal createPending(Path file, int generation, Sync sync) {
+        return new LedgerJournal(file, generation, sync, null, HEADER_SIZE);
+    }
+
+    // Creates the file of a pending journal, replacing any journal that was there; does nothing once it was started.
+    public synchronized void start() throws IOException {
+        if (channel == null) {
+            channel = createFile(file, generation);
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return channel != null;
+    }
+
+    private static FileChannel createFile(Path file, int generation) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(generation);
+            header.flip();
+            while (header.hasRemaining()) {
+                tempChannel.write(header);
+            }
+            tempChannel.force(true);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        channel.position(HEADER_SIZE);
+        return channel;
+    }
+
+    /**
+     * Opens an existing journal to append to it, after cutting off a torn last record. If there is no journal
+     * or it belongs to another snapshot, an empty one is created instead.
+     */
+    public static LedgerJournal open(Path file, int generation, Sync sync) throws IOException {
+        long validSize = Files.exists(file) ? scan(file, generation, null) : -1;
+        if (validSize < 0) {
+            return create(file, generation, sync);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(validSize);
+            channel.position(validSize);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new LedgerJournal(file, generation, sync, channel, validSize);
+    }
+
+    /**
+     * Applies the records of a journal to a store that holds the snapshot with the given generation.
+     * A journal of another generation is ignored: it was left behind by a crash after a newer snapshot
+     * was written, which already contains its changes.
+     *
+     * @return the number of records that were applied
+     */
+    public static int replay(Path file, int generation, ExpenseStore store) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        int[] applied = new int[1];
+        scan(file, generation, (type, body) -> {
+            apply(type, body, store);
+            applied[0]++;
+        });
+        return applied[0];
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    // The size of the journal file, including records that are not committed yet.
+    public synchronized long size() {
+        return size + pending.position();
+    }
+
+    // The number of records that were appended but not committed yet.
+    public synchronized long getUncommittedCount() {
+        return appendedCount - writtenCount;
+    }
+
+    // Records the current values of a row, so that replaying adds it or overwrites the row with the same id.
+    public synchronized void put(ExpenseStore store, int row) throws IOException {
+        byte[] currency = store.getCurrency(row).getBytes(StandardCharsets.UTF_8);
+        byte[] name = store.getName(row).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = startRecord(PUT, 8 + 8 + 4 + 1 + 4 + currency.length + 4 + name.length);
+        body.putLong(store.getId(row)).putDouble(store.getAmount(row)).putInt(store.getEpochDay(row))
+                .put((byte) store.getCategoryOrdinal(row))
+                .putInt(currency.length).put(currency)
+                .putInt(name.length).put(name);
+        endRecord();
+    }
+
+    public synchronized void remove(long id) throws IOException {
+        startRecord(REMOVE, 8).putLong(id);
+        endRecord();
+    }
+
+    public synchronized void clear() throws IOException {
+        startRecord(CLEAR, 0);
+        endRecord();
+    }
+
+    /**
+     * Writes every record appended so far and, depending on the sync mode, forces them to disk. Returns once
+     * the records of the calling thread are durable, which may be because another thread forced them.
+     */
+    public void commit() throws IOException {
+        long target;
+        FileChannel channel;
+        synchronized (this) {
+            if (this.channel == null) {
+                throw new IllegalStateException("The journal has not been started");
+            }
+            writePending();
+            target = writtenCount;
+            channel = this.channel;
+        }
+        if (sync == Sync.NONE) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedCount >= target) {
+                return; // Another thread forced our records while we were waiting.
+            }
+            long covered;
+            synchronized (this) {
+                covered = writtenCount; // Everything written so far, including records of threads queued behind us.
+            }
+            channel.force(false);
+            syncedCount = covered;
+        }
+    }
+
+    // Commits and closes the file. A journal that was never started has nothing on disk, so its records are dropped.
+    @Override
+    public void close() throws IOException {
+        if (!isStarted()) {
+            return;
+        }
+        try {
+            commit();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer startRecord(byte type, int bodyLength) {
+        int recordLength = 4 + 1 + bodyLength + 4;
+        if (pending.remaining() < recordLength) {
+            // Grown instead of written out, which only commit() does; it doubles, like an ArrayList.
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + recordLength));
+            pending.flip();
+            pending = grown.put(pending);
+        }
+        recordStart = pending.position();
+        pending.putInt(bodyLength).put(type);
+        return pending;
+    }
+
+    // Appends the checksum of the record that was just put into the pending buffer.
+    private void endRecord() {
+        int typeStart = recordStart + 4;
+        crc.reset();
+        crc.update(pending.array(), typeStart, pending.position() - typeStart);
+        pending.putInt((int) crc.getValue());
+        appendedCount++;
+    }
+
+    private void writePending() throws IOException {
+        if (pending.position() == 0) {
+            return;
+        }
+        pending.flip();
+        while (pending.hasRemaining()) {
+            size += channel.write(pending);
+        }
+        if (pending.capacity() > RETAINED_BUFFER_SIZE) {
+            pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        } else {
+            pending.clear();
+        }
+        writtenCount = appendedCount;
+    }
+
+    private interface RecordHandler {
+        void handle(byte type, ByteBuffer body) throws IOException;
+    }
+
+    // Walks the valid records of a journal and returns where they end, or -1 if the journal is of another generation.
+    // The journal is read into the heap rather than mapped, since it is truncated or replaced right after the
+    // scan, and Windows refuses both while a mapping of the file is still alive.
+    private static long scan(Path file, int generation, RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be read");
+            }
+            ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // Keep reading until the whole journal is in.
+            }
+            data.flip();
+            if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getShort(4) != VERSION
+                    || data.getInt(8) != generation) {
+                return -1;
+            }
+            CRC32 crc = new CRC32();
+            int offset = HEADER_SIZE;
+            while (offset + 4 + 1 + 4 <= data.limit()) {
+                int bodyLength = data.getInt(offset);
+                if (bodyLength < 0 || (long) offset + 4 + 1 + bodyLength + 4 > data.limit()) {
+                    break; // A torn record at the end.
+                }
+                ByteBuffer record = data.duplicate();
+                record.position(offset + 4).limit(offset + 4 + 1 + bodyLength);
+                crc.reset();
+                crc.update(record.duplicate());
+                if ((int) crc.getValue() != data.getInt(offset + 4 + 1 + bodyLength)) {
+                    break;
+                }
+                if (handler != null) {
+                    byte type = record.get();
+                    handler.handle(type, record.slice());
+                }
+                offset += 4 + 1 + bodyLength + 4;
+            }
+            return offset;
+        }
+    }
+
+    private static void apply(byte type, ByteBuffer body, ExpenseStore store) throws IOException {
+        try {
+            switch (type) {
+                case PUT: {
+                    long id = body.getLong();
+                    double amount = body.getDouble();
+                    int epochDay = body.getInt();
+                    int category = body.get();
+                    int currencyId = store.internCurrency(readString(body));
+                    int nameId = store.internName(readString(body));
+                    int row = store.rowOf(id);
+                    if (row < 0) {
+                        store.addRow(id, amount, epochDay, category, currencyId, nameId);
+                    } else {
+                        store.setRow(row, amount, epochDay, category, currencyId, nameId);
+                    }
+                    break;
+                }
+                case REMOVE: {
+                    int row = store.rowOf(body.getLong());
+                    if (row >= 0) {
+                        store.remove(row);
+                    }
+                    break;
+                }
+                case CLEAR:
+                    store.clear();
+                    break;
+                default:
+                    throw new IOException("Unknown journal record type " + type);
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt journal record: " + e.getMessage(), e);
+        }
+    }
+
+    private static String readString(ByteBuffer body) {
+        byte[] bytes = new byte[body.getInt()];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.utils;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A registry of counters, gauges and latency histograms, looked up by name, e.g. "ledger.save". Instrumented
+ * classes look their metrics up once, into static fields, and then only pay for an increment or a histogram
+ * record per event.
+ * <p>
+ * The registry is also a JMX MBean: once {@link #registerMBean()} was called, JConsole or VisualVM show every
+ * metric as an attribute of {@value #OBJECT_NAME}. Counters and gauges are shown as they are, and each
+ * histogram as its count, mean, 50th, 90th, 99th percentile and maximum in microseconds. The reset operation
+ * clears the histograms, e.g. before trying something out in a running tracker.
+ */
+public class Metrics implements DynamicMBean {
+    public static final String OBJECT_NAME = "com.example:type=Metrics";
+    private static final Metrics DEFAULT = new Metrics();
+    private static final String[] HISTOGRAM_STATISTICS = {"count", "meanMicros", "p50Micros", "p90Micros", "p99Micros", "maxMicros"};
+
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    // The registry the application is instrumented with.
+    public static Metrics getDefault() {
+        return DEFAULT;
+    }
+
+    // A counter that only goes up, e.g. the number of failed rate requests.
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    // A value that is set to the latest reading, e.g. the size of the ledger file after the last save.
+    public static class Gauge {
+        private final AtomicLong value = new AtomicLong();
+
+        public void set(long newValue) {
+            value.set(newValue);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, ignored -> new Counter());
+    }
+
+    public Gauge gauge(String name) {
+        return gauges.computeIfAbsent(name, ignored -> new Gauge());
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, ignored -> new LatencyHistogram());
+    }
+
+    // Clears every histogram. Counters and gauges are kept, since they are read as totals and latest values.
+    public void resetHistograms() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Registers the registry with the platform MBean server, so JMX clients can watch a running instance.
+     * Registering it again does nothing.
+     */
+    public void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(this, name);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Counter counter = counters.get(attribute);
+        if (counter != null) {
+            return counter.get();
+        }
+        Gauge gauge = gauges.get(attribute);
+        if (gauge != null) {
+            return gauge.get();
+        }
+        int dot = attribute.lastIndexOf('.');
+        LatencyHistogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+        if (histogram != null) {
+            switch (attribute.substring(dot + 1)) {
+                case "count":
+                    return histogram.getCount();
+                case "meanMicros":
+                    return histogram.getMeanNanos() / 1000;
+                case "p50Micros":
+                    return histogram.getValueAtPercentile(50) / 1000.0;
+                case "p90Micros":
+                    return histogram.getValueAtPercentile(90) / 1000.0;
+                case "p99Micros":
+                    return histogram.getValueAtPercentile(99) / 1000.0;
+                case "maxMicros":
+                    return histogram.getMaxNanos() / 1000.0;
+                default:
+                    break;
+            }
+        }
+        throw new AttributeNotFoundException("No metric called " + attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Left out, as the JMX contract asks for.
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList(); // Metrics are read-only, so none were set.
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        if ("resetHistograms".equals(actionName)) {
+            resetHistograms();
+            return null;
+        }
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    // Built on every call, since metrics are registered lazily as the application uses them.
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : counters.keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, "long", "Counter", true, false, false));
+        }
+        for (String name : gauges.keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, "long", "Gauge", true, false, false));
+        }
+        for (String name : histograms.keySet()) {
+            for (String statistic : HISTOGRAM_STATISTICS) {
+                String type = statistic.equals("count") ? "long" : "double";
+                attributes.add(new MBeanAttributeInfo(name + "." + statistic, type, "Latency histogram", true, false, false));
+            }
+        }
+        MBeanOperationInfo reset = new MBeanOperationInfo("resetHistograms", "Clears every latency histogram",
+                new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+        return new MBeanInfo(getClass().getName(), "Metrics of the expense tracker",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[]{reset}, null);
+    }
+}
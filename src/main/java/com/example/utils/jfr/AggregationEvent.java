@@ -0,0 +1,35 @@
+package com.example.utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for every aggregation over the ledger: totals, which include converting each currency, and the
+ * groupings and filters that read the month index or scan a column.
+ */
+@Name("com.example.Aggregation")
+@Label("Ledger Aggregation")
+@Category({"Expense Tracker", "Ledger"})
+@Description("A pass over the ledger or its running totals")
+public class AggregationEvent extends Event {
+    @Label("Operation")
+    @Description("totals, monthTotals, byCategory, groupByMonth or rebuildTotals")
+    public String operation;
+
+    @Label("Month")
+    @Description("The month aggregated, if the operation is limited to one")
+    public String month;
+
+    @Label("Ledger Rows")
+    public int ledgerRows;
+
+    @Label("Result Size")
+    @Description("The categories, expenses or months in the result")
+    public int resultSize;
+
+    @Label("Currencies Converted")
+    public int currencies;
+}
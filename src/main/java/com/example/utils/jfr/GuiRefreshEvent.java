@@ -0,0 +1,34 @@
+package com.example.utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded on the event thread for each part of the window that is refreshed after the ledger changed, so a
+ * stall of the GUI can be traced back to the refresh that caused it.
+ */
+@Name("com.example.GuiRefresh")
+@Label("GUI Refresh")
+@Category({"Expense Tracker", "GUI"})
+@Description("A refresh of the table, the month list or the totals on the event thread")
+public class GuiRefreshEvent extends Event {
+    public static final String TABLE = "table";
+    public static final String FILTER = "filter";
+    public static final String MONTHS = "months";
+    public static final String TOTALS = "totals";
+
+    @Label("Path")
+    @Description("table (every row shown again), filter (the month or category changed), months (the month list) or totals")
+    public String path;
+
+    @Label("Rows")
+    @Description("The rows of the table model")
+    public int rows;
+
+    @Label("Visible Rows")
+    @Description("The rows that pass the filter")
+    public int visibleRows;
+}
@@ -0,0 +1,41 @@
+package com.example.utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for loading, reading and saving the ledger file and for committing its journal.
+ */
+@Name("com.example.LedgerIo")
+@Label("Ledger File I/O")
+@Category({"Expense Tracker", "Ledger"})
+@Description("Loading or saving the ledger file, or committing its journal")
+public class LedgerIoEvent extends Event {
+    public static final String LOAD = "load";
+    public static final String READ = "read";
+    public static final String SAVE = "save";
+    public static final String COMMIT = "commit";
+
+    @Label("Operation")
+    @Description("load, read (read-only, for reports), save (a full snapshot) or commit (the journal only)")
+    public String operation;
+
+    @Label("File")
+    public String file;
+
+    @Label("Records")
+    @Description("The expenses in the ledger afterwards")
+    public int records;
+
+    @Label("File Size")
+    @DataAmount
+    public long fileSize;
+
+    @Label("Journal Size")
+    @DataAmount
+    public long journalSize;
+}
@@ -0,0 +1,39 @@
+package com.example.utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Recorded for every exchange rate the service looks up, wherever it came from. Lookups served from the cache
+ * take microseconds, so a long one is a network call; its source and currency pair say which.
+ */
+@Name("com.example.RateFetch")
+@Label("Exchange Rate Lookup")
+@Category({"Expense Tracker", "Exchange Rates"})
+@Description("An exchange rate looked up by the expense service")
+@StackTrace(false)
+public class RateFetchEvent extends Event {
+    public static final String CACHE = "cache";
+    public static final String RATE_TABLE = "rate table";
+    public static final String API = "api";
+
+    @Label("Source Currency")
+    public String sourceCurrency;
+
+    @Label("Target Currency")
+    public String targetCurrency;
+
+    @Label("Source")
+    @Description("Where the rate came from: cache, rate table or api")
+    public String source;
+
+    @Label("Cache Hit")
+    public boolean cacheHit;
+
+    @Label("Rate")
+    public double rate;
+}
@@ -0,0 +1,35 @@
+package com.example.utils.legacy;
+
+import java.io.Serializable;
+
+/**
+ * The expense class of the first releases, which lived in the default package and had no currency.
+ * It is only here so that old .ser files such as expenses_sample.ser can still be read and migrated;
+ * the class name and serialVersionUID have to match the ones in those files.
+ */
+public final class Expense implements Serializable {
+    private static final long serialVersionUID = 0x4d9f5eba15ddbe5cL;
+    private String name;
+    private String date;
+    private String category;
+    private double amount;
+
+    private Expense() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+}
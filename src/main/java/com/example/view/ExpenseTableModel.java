@@ -0,0 +1,144 @@
+package com.example.view;
+
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.model.ExpenseStore;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.time.YearMonth;
+
+/**
+ * The model of the expenses table. Cells are read straight from the columns of the ledger, so the table keeps
+ * no copy of the expenses: table row i is ledger row i. Filtering by month or category is left to the row
+ * sorter of the table.
+ * <p>
+ * The ledger does not tell the model about changes; whoever changes it calls the matching method here on the
+ * event thread, and the model fires events for just the rows involved. Cells are read through
+ * {@link ExpenseManager#readStore}, so they never block a load or an import in the background, and are read
+ * again under the read lock if one of them changed the ledger meanwhile.
+ */
+public class ExpenseTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMN_NAMES = {"Description", "Date", "Category", "Amount", "Currency"};
+
+    private final ExpenseManager manager;
+    private int rowCount; // The rows the table was told about, which may lag behind a load in the background.
+
+    public ExpenseTableModel(ExpenseManager manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        if (columnIndex == 3) { // 'Amount' is the fourth column (0-indexed).
+            return Double.class;
+        }
+        return String.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        // This will make none of the cells editable, to prevent data inconsistencies.
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int columnIndex) {
+        return manager.readStore(store -> getValueAt(store, row, columnIndex));
+    }
+
+    private static Object getValueAt(ExpenseStore store, int row, int columnIndex) {
+        if (row >= store.size()) {
+            return null; // The ledger is being reloaded, and the model was not told yet.
+        }
+        switch (columnIndex) {
+            case 0:
+                return store.getName(row);
+            case 1:
+                return store.getDate(row);
+            case 2:
+                return store.getCategory(row);
+            case 3:
+                return store.getAmount(row);
+            default:
+                return store.getCurrency(row);
+        }
+    }
+
+    /**
+     * A filter for the row sorter that keeps the expenses of a month and/or category; null means any. It compares
+     * the date and category columns of the ledger, which are stored as numbers, against bounds worked out once
+     * here, so nothing is parsed or boxed per row.
+     */
+    public RowFilter<ExpenseTableModel, Integer> createFilter(YearMonth month, String category) {
+        int firstDay = month == null ? Integer.MIN_VALUE : (int) month.atDay(1).toEpochDay();
+        int lastDay = month == null ? Integer.MAX_VALUE : (int) month.atEndOfMonth().toEpochDay();
+        int categoryOrdinal = category == null ? -1 : Expense.categoryOrdinal(category);
+        return new RowFilter<ExpenseTableModel, Integer>() {
+            @Override
+            public boolean include(Entry<? extends ExpenseTableModel, ? extends Integer> entry) {
+                int row = entry.getIdentifier();
+                return manager.readStore(store -> {
+                    if (row >= store.size()) {
+                        return false; // The ledger is being reloaded, and the model was not told yet.
+                    }
+                    int epochDay = store.getEpochDay(row);
+                    return epochDay >= firstDay && epochDay <= lastDay
+                            && (categoryOrdinal < 0 || store.getCategoryOrdinal(row) == categoryOrdinal);
+                });
+            }
+        };
+    }
+
+    // Shows the whole ledger again, e.g. after a load. Nothing is copied, so this takes the same time for any size.
+    public void showAll() {
+        rowCount = manager.readStore(ExpenseStore::size);
+        fireTableDataChanged();
+    }
+
+    // Shows an empty ledger, before the pages of a load are added with rowsAppended.
+    public void clear() {
+        rowCount = 0;
+        fireTableDataChanged();
+    }
+
+    // Called after rows were appended to the ledger, e.g. a page of a load.
+    public void rowsAppended(int count) {
+        if (count > 0) {
+            rowCount += count;
+            fireTableRowsInserted(rowCount - count, rowCount - 1);
+        }
+    }
+
+    // Called after an expense was added to the ledger, which puts it in the last row.
+    public void expenseAdded(Expense expense) {
+        rowsAppended(1);
+    }
+
+    // Called after the expense shown in a row was replaced; the row stays where it is.
+    public void expenseUpdated(int rowIndex, Expense expense) {
+        fireTableRowsUpdated(rowIndex, rowIndex);
+    }
+
+    // Called after the expense shown in a row was removed from the ledger; the rows below it move up by one.
+    public void expenseRemoved(int rowIndex) {
+        rowCount--;
+        fireTableRowsDeleted(rowIndex, rowIndex);
+    }
+}
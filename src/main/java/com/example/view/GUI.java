@@ -2,28 +2,37 @@ package com.example.view;
 
 import com.example.controller.ExpenseController;
 import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.utils.CsvImporter;
+import com.example.utils.LedgerExporter;
+import com.example.utils.jfr.GuiRefreshEvent;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.io.IOException;
 import java.time.YearMonth;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 
 public class GUI extends JFrame {
     public JTable expensesTable; // The table storing the expenses.
-    public DefaultTableModel tableModel; // The table model to use for the expenses table (default).
+    public ExpenseTableModel tableModel; // The table model, which reads the expenses straight from the ledger.
     private final ExpenseController controller; // The controller to handle user actions.
     private JButton showTotalsButton;
     private JPanel totalsPanel; // This panel will store the totals for every category.
     public JComboBox<YearMonth> monthComboBox; // This combo box will let the user choose a month to filter expenses.
+    private JComboBox<String> categoryComboBox; // And this one a category, on top of the month.
+    private TableRowSorter<ExpenseTableModel> rowSorter; // Sorts the table and filters it by month and category.
     public boolean totalsPanelVisible = false;
+    private SwingWorker<Map<String, Double>, Void> totalsWorker; // The totals conversion that is running, if any.
+    private final RefreshScheduler refreshScheduler = new RefreshScheduler(this::refresh); // Coalesces refreshes.
 
     public GUI(ExpenseController controller) {
         this.controller = controller;
         initializeMonthComboBox();
+        initializeCategoryComboBox();
         initializeGUI();
     }
 
@@ -38,10 +47,16 @@ public class GUI extends JFrame {
         menuBar.add(fileMenu);
         JMenuItem loadMenuItem = new JMenuItem("Load");
         JMenuItem saveMenuItem = new JMenuItem("Save");
+        JMenuItem importMenuItem = new JMenuItem("Import CSV...");
+        JMenuItem exportMenuItem = new JMenuItem("Export...");
         loadMenuItem.addActionListener(e -> loadExpenses());
         saveMenuItem.addActionListener(e -> saveExpenses());
+        importMenuItem.addActionListener(e -> importCsv());
+        exportMenuItem.addActionListener(e -> exportExpenses());
         fileMenu.add(loadMenuItem);
         fileMenu.add(saveMenuItem);
+        fileMenu.add(importMenuItem);
+        fileMenu.add(exportMenuItem);
         setJMenuBar(menuBar); // Adding menu bar to the frame, that has a File menu with Load and Save items.
         setupTable(); // Separate method for setting the table up.
         JPanel southPanel = getSouthPanel(); // Separate method for getting the South Panel.
@@ -59,6 +74,8 @@ public class GUI extends JFrame {
         JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 5));
         filterPanel.add(new JLabel("Filter by Month:"));
         filterPanel.add(monthComboBox);
+        filterPanel.add(new JLabel("Category:"));
+        filterPanel.add(categoryComboBox);
         // Button to show/hide totals
         showTotalsButton = new JButton("Show Overall Spending (JOD)");
         showTotalsButton.addActionListener(e -> toggleTotalsPanelVisibility());
@@ -94,7 +111,7 @@ public class GUI extends JFrame {
         // Set the button text based on the new visibility state
         if (totalsPanelVisible) {
             showTotalsButton.setText("Hide Overall Spending");
-            updateTotalExpensesByCategoryDisplay(); // Update the panel when making it visible
+            refreshTotals(); // Update the panel when making it visible
         } else {
             showTotalsButton.setText("Show Overall Spending (JOD)");
         }
@@ -168,66 +185,264 @@ public class GUI extends JFrame {
     }
 
     private void loadExpenses() {
-        try {
-            List<Expense> loadedExpenses = controller.loadExpenses();
-            // Clear existing data first.
-            tableModel.setRowCount(0);
-
-            // Add loaded expenses to the table.
-            for (Expense expense : loadedExpenses) {
-                tableModel.addRow(new Object[]{expense.getName(), expense.getDate(), expense.getCategory(), expense.getAmount(), expense.getCurrency()});
+        // Clear existing data first.
+        tableModel.clear();
+        // The file is read in the background, and every page is added to the table as soon as it is read.
+        new SwingWorker<Void, List<Expense>>() {
+            private volatile boolean rowsChanged;
+
+            @Override
+            protected Void doInBackground() throws Exception {
+                controller.loadExpenses(new ExpenseManager.LoadListener() {
+                    @Override
+                    public void pageLoaded(List<Expense> page) {
+                        publish(page);
+                    }
+
+                    @Override
+                    public void rowsChanged() {
+                        rowsChanged = true;
+                    }
+                });
+                return null;
             }
-            JOptionPane.showMessageDialog(this, "Expenses loaded successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-            if (totalsPanelVisible) updateTotalExpensesByCategoryDisplay();
-            updateMonthComboBox();
-        } catch (IOException | ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(null, "Error loading expenses: " + e.getMessage(), "Load Error", JOptionPane.ERROR_MESSAGE);
-        }
+
+            @Override
+            protected void process(List<List<Expense>> pages) {
+                // The pages are already in the ledger, so the table only has to be told how many rows it gained.
+                for (List<Expense> page : pages) {
+                    tableModel.rowsAppended(page.size());
+                }
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    if (rowsChanged) {
+                        refreshScheduler.markDirty(RefreshScheduler.TABLE); // The journal changed rows that were already shown.
+                    }
+                    JOptionPane.showMessageDialog(GUI.this, "Expenses loaded successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(null, "Error loading expenses: " + e.getCause().getMessage(), "Load Error", JOptionPane.ERROR_MESSAGE);
+                }
+                refreshScheduler.markDirty(RefreshScheduler.MONTHS | RefreshScheduler.TOTALS);
+            }
+        }.execute();
     }
 
-    private void saveExpenses() {
-        try {
-            controller.saveExpenses();
-            JOptionPane.showMessageDialog(this, "Expenses saved successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Error saving expenses: " + e.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE);
+    private void importCsv() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("CSV files", "csv"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
-    }
+        java.nio.file.Path file = chooser.getSelectedFile().toPath();
+        // Parsing and adding run in the background; the table is refreshed once, when everything was added.
+        new SwingWorker<CsvImporter.Result, Void>() {
+            @Override
+            protected CsvImporter.Result doInBackground() throws Exception {
+                return controller.importCsv(file);
+            }
 
-    private void setupTable() {
-        String[] columnNames = {"Description", "Date", "Category", "Amount", "Currency"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
             @Override
-            public Class<?> getColumnClass(int columnIndex) {
-                if (columnIndex == 3) { // 'Amount' is the fourth column (0-indexed).
-                    return Double.class;
+            protected void done() {
+                try {
+                    CsvImporter.Result result = get();
+                    refreshAll();
+                    StringBuilder message = new StringBuilder(String.format("Imported %d expenses in %.2f s (%.0f rows/s).",
+                            result.getImportedCount(), result.getElapsed().toNanos() / 1e9, result.getRowsPerSecond()));
+                    if (result.getErrorCount() > 0) {
+                        message.append("\n").append(result.getErrorCount()).append(" lines were skipped:");
+                        result.getErrors().stream().limit(10).forEach(error -> message.append("\n").append(error));
+                    }
+                    JOptionPane.showMessageDialog(GUI.this, message.toString(), "Import", result.getErrorCount() > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(null, "Error importing expenses: " + e.getCause().getMessage(), "Import Error", JOptionPane.ERROR_MESSAGE);
                 }
-                return String.class;
             }
+        }.execute();
+    }
 
+    private void exportExpenses() {
+        // Exports what the table shows: the selected month, or every expense.
+        YearMonth selectedMonth = (YearMonth) monthComboBox.getSelectedItem();
+        LedgerExporter.Slice slice = selectedMonth == null ? LedgerExporter.Slice.all() : LedgerExporter.Slice.month(selectedMonth);
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export " + slice);
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("CSV or JSON files (optionally gzipped)", "csv", "json", "gz"));
+        chooser.setSelectedFile(new java.io.File(selectedMonth == null ? "expenses.csv" : "expenses-" + selectedMonth + ".csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        java.nio.file.Path file = chooser.getSelectedFile().toPath();
+        ProgressMonitor monitor = new ProgressMonitor(this, "Exporting " + slice + "...", null, 0, 100);
+        SwingWorker<Long, Void> worker = new SwingWorker<Long, Void>() {
             @Override
-            public boolean isCellEditable(int row, int column) {
-                // This will make none of the cells editable, to prevent data inconsistencies.
-                return false;
+            protected Long doInBackground() throws Exception {
+                return controller.exportExpenses(file, slice, (written, total) ->
+                        setProgress(total == 0 ? 100 : (int) (written * 100 / total)));
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    JOptionPane.showMessageDialog(GUI.this, "Exported " + get() + " expenses to " + file.getFileName() + ".", "Export", JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(null, "Error exporting expenses: " + e.getCause().getMessage(), "Export Error", JOptionPane.ERROR_MESSAGE);
+                }
             }
         };
+        // Cancelling the monitor interrupts the export, which then removes its unfinished file.
+        worker.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName())) {
+                monitor.setProgress((Integer) event.getNewValue());
+                if (monitor.isCanceled()) {
+                    worker.cancel(true);
+                }
+            }
+        });
+        worker.execute();
+    }
+
+    private void saveExpenses() {
+        // The file is written in the background; the result is shown back on the event thread.
+        controller.saveExpensesInBackground().whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            if (error == null) {
+                JOptionPane.showMessageDialog(this, "Expenses saved successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                Throwable cause = error instanceof java.util.concurrent.CompletionException && error.getCause() != null ? error.getCause() : error;
+                JOptionPane.showMessageDialog(null, "Error saving expenses: " + cause.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
+    }
+
+    private void setupTable() {
+        tableModel = new ExpenseTableModel(controller.expenseManager);
         expensesTable = new JTable(tableModel);
-        expensesTable.setAutoCreateRowSorter(true);
+        rowSorter = new TableRowSorter<>(tableModel);
+        rowSorter.setSortsOnUpdates(true); // So an edited expense that leaves the filter also leaves the table.
+        expensesTable.setRowSorter(rowSorter);
     }
 
+    // Asks for the totals to be shown again; changes made within the same frame share one conversion.
     public void updateTotalExpensesByCategoryDisplay() {
-        Map<String, Double> totals = controller.calculateTotalExpensesByCategory();
+        refreshScheduler.markDirty(RefreshScheduler.TOTALS);
+    }
+
+    // Called by the refresh scheduler on the event thread, at most once per frame. Each part is its own flight
+    // recorder event, so a recording shows which of them held up the event thread.
+    private void refresh(int parts) {
+        if ((parts & RefreshScheduler.TABLE) != 0) {
+            GuiRefreshEvent event = new GuiRefreshEvent();
+            event.begin();
+            tableModel.showAll();
+            commitRefreshEvent(event, GuiRefreshEvent.TABLE);
+        }
+        if ((parts & RefreshScheduler.MONTHS) != 0) {
+            GuiRefreshEvent event = new GuiRefreshEvent();
+            event.begin();
+            rebuildMonthComboBox();
+            commitRefreshEvent(event, GuiRefreshEvent.MONTHS);
+        }
+        if ((parts & RefreshScheduler.TOTALS) != 0 && totalsPanelVisible) {
+            GuiRefreshEvent event = new GuiRefreshEvent();
+            event.begin();
+            refreshTotals(); // Only the part on the event thread; the conversion is an aggregation event of its own.
+            commitRefreshEvent(event, GuiRefreshEvent.TOTALS);
+        }
+    }
+
+    private void commitRefreshEvent(GuiRefreshEvent event, String path) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.rows = tableModel.getRowCount();
+            event.visibleRows = rowSorter.getViewRowCount();
+            event.commit();
+        }
+    }
+
+    /**
+     * Shows the totals of the selected month, or of every expense. They come from the running totals of the
+     * ledger and its month index, so no rows are read; only the currencies are converted, on a background thread,
+     * since the exchange rates may have to come from the network. The panel shows a progress bar meanwhile.
+     * A newer request cancels the one still running, so a slow, stale result never replaces a newer one.
+     */
+    private void refreshTotals() {
+        cancelTotalsWorker();
+        YearMonth selectedMonth = (YearMonth) monthComboBox.getSelectedItem();
         totalsPanel.removeAll();
-        totalsPanel.add(new JLabel("Overall Spending (in JOD):"));
-        refreshTotalsPanel(totals);
+        totalsPanel.add(new JLabel(selectedMonth == null ? "Overall Spending (in JOD):" : "Spending in " + selectedMonth + " (in JOD):"));
+        JProgressBar progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setString("Converting...");
+        progressBar.setStringPainted(true);
+        progressBar.setAlignmentX(Component.LEFT_ALIGNMENT);
+        totalsPanel.add(progressBar);
+        totalsPanel.revalidate();
+        totalsPanel.repaint();
+        totalsWorker = new SwingWorker<Map<String, Double>, Void>() {
+            @Override
+            protected Map<String, Double> doInBackground() {
+                return selectedMonth == null ? controller.calculateTotalExpensesByCategory() : controller.calculateTotalExpensesByCategory(selectedMonth);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || totalsWorker != this) {
+                    return; // A newer request took over the panel.
+                }
+                totalsWorker = null;
+                totalsPanel.remove(progressBar);
+                try {
+                    refreshTotalsPanel(get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+                    JLabel errorLabel = new JLabel("The exchange rates could not be fetched: " + cause.getMessage());
+                    errorLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+                    totalsPanel.add(errorLabel);
+                    totalsPanel.revalidate();
+                    totalsPanel.repaint();
+                }
+            }
+        };
+        totalsWorker.execute();
+    }
+
+    // Stops a totals conversion that is still running, and drops its result.
+    private void cancelTotalsWorker() {
+        if (totalsWorker != null) {
+            totalsWorker.cancel(true);
+            totalsWorker = null;
+        }
     }
 
     private void refreshTotalsPanel(Map<String, Double> totals) {
-        for (Map.Entry<String, Double> total : totals.entrySet()) {
-            JLabel totalLabel = new JLabel(total.getKey() + ": " + String.format("%.2f", total.getValue()));
+        // Labels for each category total in the predefined order of CATEGORIES, then the overall spending.
+        double overallSpending = 0;
+        for (String category : controller.CATEGORIES) {
+            double totalAmount = totals.getOrDefault(category, 0.0);
+            overallSpending += totalAmount;
+            JLabel totalLabel = new JLabel(category + ": " + String.format("%.2f", totalAmount));
             totalLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
             totalsPanel.add(totalLabel);
         }
+        JLabel overallSpendingLabel = new JLabel("Overall Spending: " + String.format("%.2f", overallSpending));
+        overallSpendingLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        totalsPanel.add(overallSpendingLabel);
         totalsPanel.revalidate();
         totalsPanel.repaint();
     }
@@ -263,24 +478,21 @@ public class GUI extends JFrame {
         }
     }
 
+    // The ledger already holds the new values, so the table only repaints the row.
     public void updateTableRow(Expense expense, int rowIndex) {
-        tableModel.setValueAt(expense.getName(), rowIndex, 0);
-        tableModel.setValueAt(expense.getDate(), rowIndex, 1);
-        tableModel.setValueAt(expense.getCategory(), rowIndex, 2);
-        tableModel.setValueAt(expense.getAmount(), rowIndex, 3);
-        tableModel.setValueAt(expense.getCurrency(), rowIndex, 4);
+        tableModel.expenseUpdated(rowIndex, expense);
     }
 
     private void initializeMonthComboBox() {
         monthComboBox = new JComboBox<>();
-        TreeMap<YearMonth, List<Expense>> groupedByMonth = controller.getExpensesGroupedByMonth();
         // Using a Vector for a "Show All" option at the beginning of the list.
-        Vector<YearMonth> comboBoxModelData = new Vector<>(groupedByMonth.keySet());
+        Vector<YearMonth> comboBoxModelData = new Vector<>(controller.getMonths());
         comboBoxModelData.insertElementAt(null, 0);
 
         DefaultComboBoxModel<YearMonth> model = new DefaultComboBoxModel<>(comboBoxModelData);
         monthComboBox.setModel(model);
 
+        // The renderer is created once here; rebuilding the list of months only replaces the model.
         monthComboBox.setRenderer(new DefaultListCellRenderer() {
             @Override
             public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
@@ -295,93 +507,69 @@ public class GUI extends JFrame {
         });
 
         monthComboBox.addActionListener(e -> {
-            YearMonth selectedMonth = (YearMonth) monthComboBox.getSelectedItem();
-            if (selectedMonth == null) {
-                updateTableForAllExpenses(); // This will update the table for all expenses.
-                updateTotalExpensesByCategoryDisplay(); // This will update the totals for all expenses.
-            } else {
-                updateTableForSelectedMonth(selectedMonth); // This updates the table for the selected month.
-                updateTotalsForSelectedMonth(); // This updates totals for the selected month.
-            }
+            applyFilter(); // This filters the table for the selected month.
+            refreshScheduler.markDirty(RefreshScheduler.TOTALS); // And this updates the totals for it.
         });
     }
 
-    private void updateTableForAllExpenses() {
-        List<Expense> allExpenses = controller.getAllExpenses();
-        tableModel.setRowCount(0); // Clear the table first.
-        for (Expense expense : allExpenses) {
-            tableModel.addRow(new Object[]{expense.getName(), expense.getDate(), expense.getCategory(), expense.getAmount(), expense.getCurrency()});
+    private void initializeCategoryComboBox() {
+        categoryComboBox = new JComboBox<>();
+        categoryComboBox.addItem("All Categories");
+        for (String category : controller.CATEGORIES) {
+            categoryComboBox.addItem(category);
         }
+        categoryComboBox.addActionListener(e -> applyFilter());
     }
 
-    private void updateTableForSelectedMonth(YearMonth yearMonth) {
-        List<Expense> expensesForMonth = controller.getExpensesGroupedByMonth().get(yearMonth);
-        tableModel.setRowCount(0); // Clear the table first.
-        for (Expense expense : expensesForMonth) {
-            tableModel.addRow(new Object[]{expense.getName(), expense.getDate(), expense.getCategory(), expense.getAmount(), expense.getCurrency()});
-            updateTotalsForSelectedMonth();
-        }
+    // Filters the table by the selected month and category; the model is never rebuilt for a filter.
+    private void applyFilter() {
+        GuiRefreshEvent event = new GuiRefreshEvent();
+        event.begin();
+        YearMonth selectedMonth = (YearMonth) monthComboBox.getSelectedItem();
+        String category = categoryComboBox.getSelectedIndex() > 0 ? (String) categoryComboBox.getSelectedItem() : null;
+        rowSorter.setRowFilter(selectedMonth == null && category == null ? null : tableModel.createFilter(selectedMonth, category));
+        commitRefreshEvent(event, GuiRefreshEvent.FILTER);
     }
 
+    // Asks for the table, the month list and the totals to be refreshed, e.g. after a bulk change to the ledger.
+    public void refreshAll() {
+        refreshScheduler.markDirty(RefreshScheduler.TABLE | RefreshScheduler.MONTHS | RefreshScheduler.TOTALS);
+    }
+
+    // Asks for the month list to be rebuilt; a burst of changes rebuilds it once.
     public void updateMonthComboBox() {
-        TreeMap<YearMonth, List<Expense>> groupedByMonth = controller.getExpensesGroupedByMonth();
+        refreshScheduler.markDirty(RefreshScheduler.MONTHS);
+    }
+
+    private void rebuildMonthComboBox() {
+        NavigableSet<YearMonth> months = controller.getMonths();
+        ComboBoxModel<YearMonth> current = monthComboBox.getModel();
+        if (current.getSize() == months.size() + 1 && sameMonths(current, months)) {
+            return; // Most changes stay within months that are already listed.
+        }
         DefaultComboBoxModel<YearMonth> model = new DefaultComboBoxModel<>();
         model.addElement(null);  // Represents the "Show All" option.
-        // Adding the rest of the months.
-        for (YearMonth yearMonth : groupedByMonth.keySet()) {
+        // Adding the rest of the months, straight from the month index.
+        for (YearMonth yearMonth : months) {
             model.addElement(yearMonth);
         }
+        // The selected month stays selected as long as it has expenses, and the filter follows the selection.
+        Object selectedMonth = monthComboBox.getSelectedItem();
+        model.setSelectedItem(selectedMonth != null && model.getIndexOf(selectedMonth) >= 0 ? selectedMonth : null);
         monthComboBox.setModel(model);
-        monthComboBox.setRenderer(new DefaultListCellRenderer() {
-            @Override
-            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
-                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-                if (value == null) {
-                    setText("Show All");
-                } else {
-                    setText(((YearMonth) value).toString());
-                }
-                return this;
-            }
-        });
-    }
-
-    private void updateTotalsForSelectedMonth() {
-        // Reset the totals panel first.
-        totalsPanel.removeAll();
-
-        // Initialize a map to hold the totals for each category.
-        Map<String, Double> totals = new LinkedHashMap<>();
-
-        // Initialize all categories with zero totals.
-        for (String category : controller.CATEGORIES) {
-            totals.put(category, 0.0);
-        }
-
-        // Iterate over the table model to accumulate totals by category.
-        for (int i = 0; i < tableModel.getRowCount(); i++) {
-            String category = (String) tableModel.getValueAt(i, 2); // Zero-indexed, so 2 is the category column index
-            Double amount = (Double) tableModel.getValueAt(i, 3); // Zero-indexed, so 3 is the amount column index
-            totals.merge(category, amount, Double::sum);
+        if (!Objects.equals(selectedMonth, model.getSelectedItem())) {
+            applyFilter(); // Otherwise the sorter already filtered the rows that changed.
         }
+    }
 
-        // Add labels for each category total in the predefined order of CATEGORIES.
-        double overallSpending = 0;
-        for (String category : controller.CATEGORIES) {
-            Double totalAmount = totals.get(category);
-            overallSpending += totalAmount;
-            JLabel totalLabel = new JLabel(category + ": " + String.format("%.2f", totalAmount));
-            totalLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-            totalsPanel.add(totalLabel);
+    // Whether the combo box lists exactly these months, after its "Show All" entry.
+    private static boolean sameMonths(ComboBoxModel<YearMonth> model, NavigableSet<YearMonth> months) {
+        int index = 1;
+        for (YearMonth yearMonth : months) {
+            if (!yearMonth.equals(model.getElementAt(index++))) {
+                return false;
+            }
         }
-
-        // Add overall spending label.
-        JLabel overallSpendingLabel = new JLabel("Overall Spending: " + String.format("%.2f", overallSpending));
-        overallSpendingLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-        totalsPanel.add(overallSpendingLabel, 0);
-
-        // Refresh the panel to display the new totals.
-        totalsPanel.revalidate();
-        totalsPanel.repaint();
+        return true;
     }
 }
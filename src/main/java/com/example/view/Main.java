@@ -3,18 +3,56 @@ package com.example.view;
 import com.example.controller.ExpenseController;
 import com.example.model.ExpenseManager;
 import com.example.service.ExpenseService;
+import com.example.service.HistoricalRateStore;
+import com.example.utils.AutoSaveScheduler;
 import com.example.utils.ExpenseFileHandler;
+import com.example.utils.Metrics;
 
+import javax.management.JMException;
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 public class Main {
     public static void main(String[] args) throws UnsupportedLookAndFeelException, ClassNotFoundException, InstantiationException, IllegalAccessException {
         darkMode();
+        // Makes the metrics visible to JConsole and VisualVM, under com.example:type=Metrics.
+        try {
+            Metrics.getDefault().registerMBean();
+        } catch (JMException e) {
+            System.out.println("The metrics could not be published over JMX: " + e.getMessage());
+        }
         ExpenseService expenseService = new ExpenseService();
+        // Releases the pooled HTTP connections when the application exits.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                expenseService.close();
+            } catch (IOException e) {
+                System.out.println("Could not close the exchange rate client: " + e.getMessage());
+            }
+        }));
         ExpenseFileHandler expenseFileHandler = new ExpenseFileHandler();
         ExpenseManager expenseManager = new ExpenseManager(expenseService, expenseFileHandler);
+        // Saves changes in the background once the ledger was loaded or saved, and writes the last ones on exit.
+        AutoSaveScheduler autoSaver = new AutoSaveScheduler(expenseManager);
+        expenseManager.setChangeListener(autoSaver::markDirty);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                autoSaver.close();
+            } catch (IOException e) {
+                System.out.println("Could not save the last changes: " + e.getMessage());
+            }
+        }));
+        try {
+            expenseService.setHistoricalRateStore(new HistoricalRateStore(Paths.get("exchange_rates.dat"), "JOD"));
+        } catch (IOException e) {
+            System.out.println("The historical exchange rates could not be opened: " + e.getMessage());
+        }
         ExpenseController controller = new ExpenseController(expenseManager);
+        controller.setAutoSaver(autoSaver);
+        // One JOD table covers every currency the app offers, since totals are shown in JOD.
+        expenseService.useRateTable("JOD", controller.CURRENCIES);
         GUI gui = new GUI(controller);
         controller.setGui(gui);
     }
@@ -0,0 +1,59 @@
+package com.example.view;
+
+import com.example.utils.LatencyHistogram;
+import com.example.utils.Metrics;
+
+import javax.swing.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * Coalesces the refreshes the GUI needs after the ledger changed. Callers only mark which parts are out of
+ * date, from any thread, and everything marked within one frame is refreshed together on the event thread.
+ * A bulk operation that marks the same parts thousands of times therefore causes a single refresh.
+ */
+public class RefreshScheduler {
+    public static final int MONTHS = 1; // The list of months in the filter.
+    public static final int TOTALS = 2; // The totals panel.
+    public static final int TABLE = 4; // Every row of the table, e.g. after a load or a bulk change.
+
+    public static final int FRAME_MILLIS = 16; // About 60 refreshes per second at most.
+    // How long each refresh held up the event thread; anything near FRAME_MILLIS or above is visible as lag.
+    private static final LatencyHistogram REFRESH_LATENCY = Metrics.getDefault().histogram("gui.refresh");
+
+    private final IntConsumer refresher;
+    private final Timer timer;
+    private final AtomicInteger dirty = new AtomicInteger(); // The parts marked since the last refresh.
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    // The refresher is called on the event thread with the parts that are out of date.
+    public RefreshScheduler(IntConsumer refresher) {
+        this.refresher = refresher;
+        this.timer = new Timer(FRAME_MILLIS, e -> flush());
+        timer.setRepeats(false);
+    }
+
+    // Marks parts as out of date; the first mark after a refresh schedules the next one.
+    public void markDirty(int parts) {
+        if (dirty.getAndAccumulate(parts, (current, added) -> current | added) == 0) {
+            timer.restart();
+        }
+    }
+
+    // Refreshes whatever is marked right away. Must be called on the event thread.
+    public void flush() {
+        timer.stop();
+        int parts = dirty.getAndSet(0); // Cleared first, so a part marked while refreshing is refreshed again.
+        if (parts != 0) {
+            refreshCount.incrementAndGet();
+            long start = System.nanoTime();
+            refresher.accept(parts);
+            REFRESH_LATENCY.recordSince(start);
+        }
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+}
@@ -0,0 +1,80 @@
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.service.ExpenseService;
+import com.example.utils.AutoSaveScheduler;
+import com.example.utils.ExpenseFileHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for the background autosave.
+public class AutoSaveSchedulerTest {
+    @TempDir
+    Path directory;
+    private final ExpenseService expenseService = new ExpenseService();
+    private String fileName;
+    private ExpenseManager manager;
+
+    @BeforeEach
+    void setUp() {
+        fileName = directory.resolve("expenses.ledger").toString();
+        manager = new ExpenseManager(expenseService, new ExpenseFileHandler(fileName));
+    }
+
+    private int savedCount() throws IOException, ClassNotFoundException {
+        ExpenseManager loaded = new ExpenseManager(expenseService, new ExpenseFileHandler(fileName));
+        return loaded.loadExpenses().size();
+    }
+
+    @Test
+    public void testBurstIsSavedOnce() throws Exception {
+        manager.saveExpenses();
+        try (AutoSaveScheduler autoSaver = new AutoSaveScheduler(manager, Duration.ofMillis(100))) {
+            manager.setChangeListener(autoSaver::markDirty);
+            for (int i = 0; i < 100; i++) {
+                manager.addExpense(new Expense("Coffee " + i, "01/01/2024", "Food", i, "USD"));
+            }
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (autoSaver.getSaveCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, autoSaver.getSaveCount());
+            assertTrue(autoSaver.getMaxSaveLatency().compareTo(Duration.ZERO) > 0);
+            assertEquals(100, savedCount());
+        }
+    }
+
+    @Test
+    public void testCloseWritesPendingChanges() throws Exception {
+        manager.saveExpenses();
+        AutoSaveScheduler autoSaver = new AutoSaveScheduler(manager, Duration.ofHours(1));
+        manager.setChangeListener(autoSaver::markDirty);
+        manager.addExpense(new Expense("Lunch", "26/11/2023", "Food", 6200, "HUF"));
+        autoSaver.close();
+        assertEquals(1, autoSaver.getSaveCount());
+        assertEquals(1, savedCount());
+    }
+
+    @Test
+    public void testNothingIsSavedBeforeTheLedgerWasLoadedOrSaved() throws Exception {
+        AutoSaveScheduler autoSaver = new AutoSaveScheduler(manager, Duration.ofMillis(10));
+        manager.setChangeListener(autoSaver::markDirty);
+        manager.addExpense(new Expense("Lunch", "26/11/2023", "Food", 6200, "HUF"));
+        autoSaver.close();
+        assertEquals(0, autoSaver.getSaveCount());
+        assertFalse(Files.exists(Path.of(fileName)));
+
+        // Saving on request still works.
+        AutoSaveScheduler another = new AutoSaveScheduler(manager);
+        another.saveNow().get();
+        another.close();
+        assertEquals(1, savedCount());
+    }
+}
@@ -0,0 +1,64 @@
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.service.ExpenseService;
+import com.example.utils.CsvImporter;
+import com.example.utils.ExpenseFileHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for the bulk CSV import.
+public class CsvImporterTest {
+    @TempDir
+    Path directory;
+
+    private Path write(List<String> lines) throws IOException {
+        Path file = directory.resolve("statement.csv");
+        Files.write(file, lines);
+        return file;
+    }
+
+    @Test
+    public void testCollectsErrorsWithLineNumbers() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("Name,Date,Category,Amount,Currency");
+        for (int i = 0; i < 500; i++) {
+            lines.add("\"Coffee, large\"," + String.format("%02d", i % 28 + 1) + "/01/2024,Food," + i + ",usd");
+        }
+        lines.set(101, "Coffee,2024-02-01,Food,5,USD"); // Not in the dd/MM/yyyy format.
+        lines.set(202, "Coffee,01/02/2024,Gadgets,5,USD");
+        lines.set(303, "Coffee,01/02/2024,Food,five,USD");
+        lines.set(404, "Coffee,01/02/2024,Food");
+
+        // Small chunks, so the lines are spread over many chunks that are parsed in parallel.
+        CsvImporter.Result result = new CsvImporter(256).parse(write(lines));
+        assertEquals(496, result.getImportedCount());
+        assertEquals(4, result.getErrorCount());
+        assertEquals(List.of(102L, 203L, 304L, 405L), result.getErrors().stream().map(CsvImporter.LineError::getLineNumber).collect(java.util.stream.Collectors.toList()));
+        assertEquals(new Expense("Coffee, large", "01/01/2024", "Food", 0, "USD"), result.getExpenses().get(0));
+        assertEquals(499, result.getExpenses().get(495).getAmount()); // The order of the file is kept.
+    }
+
+    @Test
+    public void testImportsInOneBatch() throws IOException {
+        ExpenseManager manager = new ExpenseManager(new ExpenseService(), new ExpenseFileHandler());
+        int[] changes = new int[1];
+        manager.setChangeListener(() -> changes[0]++);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add("Bus Ticket,24/11/2023,Transportation,350,HUF");
+        }
+        CsvImporter.Result result = new CsvImporter().importInto(write(lines), manager);
+        assertEquals(1000, result.getImportedCount());
+        assertEquals(1000, manager.getAllExpenses().size());
+        assertEquals(1, changes[0]);
+        assertTrue(result.getRowsPerSecond() > 0);
+    }
+}
@@ -2,6 +2,7 @@ import com.example.controller.ExpenseController;
 import com.example.model.Expense;
 import com.example.model.ExpenseManager;
 import com.example.service.ExpenseService;
+import com.example.view.ExpenseTableModel;
 import com.example.view.GUI;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,12 +10,10 @@ import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.io.IOException;
 import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.TreeMap;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -35,8 +34,9 @@ class ExpenseControllerTest {
         mockGui = mock(GUI.class);
         controller = new ExpenseController(mockManager);
         controller.setGui(mockGui);
-        mockGui.tableModel = new DefaultTableModel();
-        mockGui.expensesTable = new JTable(mockGui.tableModel);
+        // The table model reads from the ledger, which is mocked, so the table gets one row of its own to select.
+        mockGui.tableModel = mock(ExpenseTableModel.class);
+        mockGui.expensesTable = new JTable(1, 5);
         when(mockManager.getService()).thenReturn(mockService);
 
         // Initialize monthComboBox with YearMonth items or Strings, depending on your application's needs
@@ -70,7 +70,11 @@ class ExpenseControllerTest {
     void testRemoveSelectedExpense() {
         controller.addExpense("Test Expense", "07/09/1981", "Food", "0.0", "USD");
         mockGui.expensesTable.addRowSelectionInterval(0, 0);
-        when(mockManager.removeExpense(anyInt())).thenReturn(true);
+        List<Expense> expenses = new ArrayList<>();
+        expenses.add(new Expense("Test Expense", "07/09/1981", "Food", 0.0, "USD"));
+        when(mockManager.getExpenseAt(0)).thenReturn(expenses.get(0));
+        when(mockManager.getExpensesForMonth(any(YearMonth.class))).thenReturn(expenses);
+        when(mockManager.removeById(anyLong())).thenReturn(true);
 
         try (MockedStatic<JOptionPane> mockedStatic = Mockito.mockStatic(JOptionPane.class)) {
             mockedStatic.when(() -> JOptionPane.showConfirmDialog(
@@ -79,7 +83,7 @@ class ExpenseControllerTest {
 
             controller.removeSelectedExpense();
 
-            verify(mockManager, times(1)).removeExpense(anyInt());
+            verify(mockManager, times(1)).removeById(anyLong());
             verify(mockGui, times(2)).updateMonthComboBox();
         }
     }
@@ -101,10 +105,8 @@ class ExpenseControllerTest {
         List<Expense> expenses = new ArrayList<>();
         Expense oldExpense = new Expense("Test Expense", "07/09/1981", "Food", 0.0, "USD");
         expenses.add(oldExpense);
-        when(mockManager.getAllExpenses()).thenReturn(expenses);
-        when(mockManager.getExpensesGroupedByMonth()).thenReturn(new TreeMap<YearMonth, List<Expense>>() {{
-            put(YearMonth.now(), expenses);
-        }});
+        when(mockManager.getExpenseAt(0)).thenReturn(oldExpense);
+        when(mockManager.getExpensesForMonth(YearMonth.now())).thenReturn(expenses);
 
         // Simulate user input for editing an expense
         Expense newExpense = new Expense("Edited Expense", "07/09/1981", "Food", 20.0, "USD");
@@ -114,13 +116,13 @@ class ExpenseControllerTest {
         // Mock the getUpdatedExpenseFromUser method to avoid UI interaction
         ExpenseController controllerSpy = spy(controller);
         doReturn(newExpense).when(controllerSpy).getUpdatedExpenseFromUser(oldExpense);
-        when(mockManager.editExpense(any(Expense.class), any(Expense.class))).thenReturn(true);
+        when(mockManager.replaceById(anyLong(), any(Expense.class))).thenReturn(true);
 
         // Act
         controllerSpy.editSelectedExpense();
 
         // Assert
-        verify(mockManager, times(1)).editExpense(any(Expense.class), any(Expense.class));
+        verify(mockManager, times(1)).replaceById(anyLong(), any(Expense.class));
         verify(mockGui, times(1)).updateMonthComboBox();
         verify(mockGui, times(1)).updateTableRow(any(Expense.class), anyInt());
         if (mockGui.totalsPanelVisible) {
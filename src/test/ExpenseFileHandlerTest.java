@@ -1,16 +1,22 @@
 import com.example.model.Expense;
 import com.example.model.ExpenseManager;
+import com.example.model.ExpenseStore;
 import com.example.service.ExpenseService;
 import com.example.utils.ExpenseFileHandler;
+import com.example.utils.LedgerFile;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 // A class for testing with JUnit. I have provided more details in the documentation.
 public class ExpenseFileHandlerTest {
@@ -54,9 +60,56 @@ public class ExpenseFileHandlerTest {
         }
     }
 
+    @Test
+    public void testLedgerKeepsIdsAndDictionaries(@TempDir Path directory) throws IOException {
+        ExpenseStore store = new ExpenseStore();
+        store.add(new Expense("Lunch", "10/10/2023", "Food", 2300, "HUF"));
+        store.add(new Expense("Rent", "01/10/2023", "Rent", 450.5, "EUR"));
+        store.add(new Expense("Lunch", "12/10/2023", "Food", 2100, "HUF"));
+        store.remove(0); // Leaves a gap in the ids.
+        Path file = directory.resolve("ledger.dat");
+        LedgerFile.write(store, file);
+        assertTrue(LedgerFile.isLedgerFile(file));
+
+        ExpenseStore loaded = new ExpenseStore();
+        assertEquals(2, LedgerFile.read(file, loaded));
+        for (int row = 0; row < store.size(); row++) {
+            assertEquals(store.get(row), loaded.get(row));
+            assertEquals(store.getId(row), loaded.getId(row));
+        }
+        assertEquals(2, loaded.getId(0));
+        assertEquals(3, loaded.getId(1));
+        assertTrue(loaded.getId(loaded.add(new Expense("Coffee", "13/10/2023", "Food", 600, "HUF"))) > 3); // No id is reused.
+    }
+
+    @Test
+    public void testMigratesLegacySerializedFile(@TempDir Path directory) throws IOException, ClassNotFoundException {
+        Path file = directory.resolve("expenses.ser");
+        Files.copy(Paths.get("expenses_sample.ser"), file);
+        assertFalse(LedgerFile.isLedgerFile(file));
+
+        // Loading migrates the file once; the old expenses had no currency.
+        List<Expense> loadedExpenses = new ExpenseFileHandler(file.toString()).loadExpensesFromFile();
+        assertTrue(LedgerFile.isLedgerFile(file));
+        assertEquals(3, loadedExpenses.size());
+        assertEquals(new Expense("Lunch", "27/11/2023", "Food", 4200, ExpenseFileHandler.LEGACY_CURRENCY), loadedExpenses.get(0));
+        // The serialized file was replaced in place, so it was kept as a backup first.
+        assertArrayEquals(Files.readAllBytes(Paths.get("expenses_sample.ser")), Files.readAllBytes(directory.resolve("expenses.ser.bak")));
+    }
+
+    @Test
+    public void testRejectsTruncatedLedger(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("ledger.dat");
+        handler.saveExpensesToFile(testExpenseManager.getAllExpenses());
+        byte[] bytes = Files.readAllBytes(Paths.get(testFileName));
+        Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(IOException.class, () -> LedgerFile.read(file, new ExpenseStore()));
+    }
+
     @AfterEach
     public void tearDown() {
         // Clean up the test file
         new File(testFileName).delete();
+        new File(testFileName + ".journal").delete();
     }
 }
@@ -1,6 +1,7 @@
 import com.example.model.Expense;
 import com.example.model.ExpenseManager;
 import com.example.service.ExpenseService;
+import com.example.service.FixedRateProvider;
 import com.example.utils.ExpenseFileHandler;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -8,8 +9,15 @@ import org.junit.jupiter.api.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -39,6 +47,19 @@ public class ExpenseManagerTest {
         assertTrue(expenseManager.getAllExpenses().contains(newExpense));
     }
 
+    @Test
+    public void testGetAllExpensesReturnsACopy() {
+        List<Expense> before = expenseManager.getAllExpenses();
+        expenseManager.addExpense(new Expense("Coffee", "20/11/2023", "Food", 600, "HUF"));
+        expenseManager.removeById(before.get(0).getId());
+        assertEquals(3, before.size()); // Taken before the changes, and not changed by them.
+        assertEquals("Lunch", before.get(0).getName());
+        assertThrows(UnsupportedOperationException.class, () -> before.remove(0));
+        assertEquals("Bus Ticket", expenseManager.getExpenseAt(0).getName()); // The later rows moved up, in order.
+        assertEquals("Coffee", expenseManager.getExpenseAt(2).getName());
+        assertNull(expenseManager.getExpenseAt(3));
+    }
+
     @Test
     public void testRemoveExpense() {
         Expense expenseToRemove = new Expense("Lunch", "26/11/2023", "Food", 6200, "HUF");
@@ -105,6 +126,183 @@ public class ExpenseManagerTest {
         assertNotEquals(expenseManager, anotherManager);
     }
 
+    @Test
+    public void testCalculateTotalExpensesByCategory() {
+        ExpenseService fixedService = new ExpenseService(new FixedRateProvider("JOD", Collections.singletonMap("HUF", 500.0)));
+        ExpenseManager manager = new ExpenseManager(fixedService, expenseFileHandler);
+        manager.addExpense(new Expense("Lunch", "26/11/2023", "Food", 6000, "HUF"));
+        manager.addExpense(new Expense("Dinner", "26/11/2023", "Food", 5, "JOD"));
+        manager.addExpense(new Expense("Bus Ticket", "24/11/2023", "Transportation", 500, "HUF"));
+        Map<String, Double> totals = manager.calculateTotalExpensesByCategory();
+        assertEquals(17.0, totals.get("Food"), 1e-9);
+        assertEquals(1.0, totals.get("Transportation"), 1e-9);
+        assertEquals(0.0, totals.get("Rent"));
+
+        // The totals follow every change to the ledger.
+        manager.editExpense(new Expense("Dinner", "26/11/2023", "Food", 5, "JOD"), new Expense("Dinner", "26/11/2023", "Food", 7, "JOD"));
+        manager.removeExpense(2);
+        totals = manager.calculateTotalExpensesByCategory();
+        assertEquals(19.0, totals.get("Food"), 1e-9);
+        assertEquals(0.0, totals.get("Transportation"));
+        manager.clearExpenses();
+        assertEquals(0.0, manager.calculateTotalExpensesByCategory().get("Food"));
+    }
+
+    @Test
+    public void testMonthIndexFollowsChanges() {
+        YearMonth november = YearMonth.of(2023, 11);
+        YearMonth october = YearMonth.of(2023, 10);
+        assertEquals(2, expenseManager.getExpenseCount(november));
+        assertEquals(1, expenseManager.getExpenseCount(october));
+
+        // Removing the first expense moves the last row into its place; the months keep their order.
+        expenseManager.removeExpense(0);
+        assertEquals("Bus Ticket", expenseManager.getExpensesForMonth(november).get(0).getName());
+        assertEquals("Cheese", expenseManager.getExpensesForMonth(october).get(0).getName());
+
+        // Moving an expense to another month moves it in the index.
+        expenseManager.editExpense(new Expense("Cheese", "11/10/2023", "Groceries", 4540, "HUF"), new Expense("Cheese", "11/12/2023", "Groceries", 4540, "HUF"));
+        assertFalse(expenseManager.getMonths().contains(october));
+        assertEquals(1, expenseManager.getExpenseCount(YearMonth.of(2023, 12)));
+
+        ExpenseService fixedService = new ExpenseService(new FixedRateProvider("JOD", Collections.singletonMap("HUF", 500.0)));
+        ExpenseManager manager = new ExpenseManager(fixedService, expenseFileHandler);
+        manager.addExpense(new Expense("Lunch", "26/11/2023", "Food", 6000, "HUF"));
+        manager.addExpense(new Expense("Dinner", "01/12/2023", "Food", 5, "JOD"));
+        assertEquals(12.0, manager.calculateTotalExpensesByCategory(november).get("Food"), 1e-9);
+    }
+
+    @Test
+    public void testEditAndRemoveById() {
+        // Two expenses with the same values; the id tells them apart.
+        expenseManager.addExpense(new Expense("Cheese", "11/10/2023", "Groceries", 4540, "HUF"));
+        Expense second = expenseManager.getAllExpenses().get(3);
+        assertTrue(expenseManager.replaceById(second.getId(), new Expense("Cheese", "11/10/2023", "Groceries", 5000, "HUF")));
+        assertEquals(4540, expenseManager.getAllExpenses().get(2).getAmount());
+        assertEquals(5000, expenseManager.getExpenseById(second.getId()).getAmount());
+
+        long lunchId = expenseManager.getAllExpenses().get(0).getId();
+        assertTrue(expenseManager.removeById(lunchId));
+        assertFalse(expenseManager.removeById(lunchId));
+        assertNull(expenseManager.getExpenseById(lunchId));
+        assertEquals(3, expenseManager.getAllExpenses().size());
+        assertEquals(5000, expenseManager.getExpenseById(second.getId()).getAmount());
+    }
+
+    @Test
+    public void testRemoveByIdsNotifiesOnce() {
+        int[] changes = new int[1];
+        expenseManager.setChangeListener(() -> changes[0]++);
+        List<Expense> expenses = expenseManager.getAllExpenses();
+        long[] ids = {expenses.get(0).getId(), expenses.get(2).getId(), -1};
+        assertEquals(2, expenseManager.removeByIds(ids));
+        assertEquals(1, changes[0]);
+        assertEquals(1, expenseManager.getAllExpenses().size());
+        assertEquals("Bus Ticket", expenseManager.getAllExpenses().get(0).getName());
+        assertEquals(0, expenseManager.getExpenseCount(YearMonth.of(2023, 10)));
+    }
+
+    @Test
+    public void testTotalsOnlyLookUpCurrenciesStillInTheLedger() {
+        FixedRateProvider provider = new FixedRateProvider("JOD", Map.of("HUF", 400.0, "XAF", 800.0));
+        ExpenseManager manager = new ExpenseManager(new ExpenseService(provider), new ExpenseFileHandler());
+        manager.addExpense(new Expense("Lunch", "26/11/2023", "Food", 4000, "HUF"));
+        manager.calculateTotalExpensesByCategory();
+        long requests = provider.getRequestCount();
+        Expense trip = new Expense("Taxi", "27/11/2023", "Transportation", 8000, "XAF");
+        manager.addExpense(trip);
+        manager.removeById(trip.getId());
+        assertEquals(10.0, manager.calculateTotalExpensesByCategory().get("Food"), 1e-9);
+        assertEquals(requests, provider.getRequestCount()); // No rate was looked up for the removed XAF expense.
+    }
+
+    @Test
+    public void testReadersAndWritersOnManyThreads() throws Exception {
+        ExpenseManager manager = new ExpenseManager(new ExpenseService(new FixedRateProvider("JOD", Map.of("HUF", 400.0))), new ExpenseFileHandler());
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int writer = 0; writer < 4; writer++) {
+            int month = writer + 1;
+            tasks.add(pool.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    Expense expense = new Expense("Coffee", String.format("%02d/%02d/2023", i % 28 + 1, month), "Food", 400, "HUF");
+                    manager.addExpense(expense);
+                    if (i % 2 == 0) {
+                        manager.removeById(expense.getId());
+                    }
+                }
+            }));
+        }
+        for (int reader = 0; reader < 4; reader++) {
+            tasks.add(pool.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    for (YearMonth month : manager.getMonths()) {
+                        manager.getExpensesForMonth(month).forEach(expense -> assertEquals("Coffee", expense.getName()));
+                    }
+                    manager.getExpensesByCategory("Food");
+                    double total = manager.calculateTotalExpensesByCategory().get("Food");
+                    assertTrue(total >= 0 && total <= 8000);
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get(60, TimeUnit.SECONDS); // Rethrows whatever failed on the pool.
+        }
+        pool.shutdown();
+        assertEquals(4000, manager.getAllExpenses().size());
+        assertEquals(1000, manager.getExpenseCount(YearMonth.of(2023, 3)));
+        assertEquals(4000, manager.calculateTotalExpensesByCategory().get("Food"), 1e-6);
+    }
+
+    @Test
+    public void testLookupsByIdWhileTheIndexGrows() throws Exception {
+        ExpenseManager manager = new ExpenseManager(new ExpenseService(new FixedRateProvider("JOD", Map.of("HUF", 400.0))), new ExpenseFileHandler());
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        // Every expense has a new name, so the id index and the name dictionary both grow while the readers look up rows.
+        Future<?> writer = pool.submit(() -> {
+            for (int i = 0; i < 50_000; i++) {
+                manager.addExpense(new Expense("Expense " + i, "01/01/2024", "Food", i, "HUF"));
+            }
+        });
+        List<Future<?>> readers = new ArrayList<>();
+        for (int reader = 0; reader < 3; reader++) {
+            readers.add(pool.submit(() -> {
+                while (!writer.isDone()) {
+                    for (long id = 1; id <= 50_000; id += 997) {
+                        Expense expense = manager.getExpenseById(id);
+                        if (expense != null) {
+                            assertEquals("Expense " + (id - 1), expense.getName());
+                        }
+                    }
+                }
+            }));
+        }
+        writer.get(60, TimeUnit.SECONDS);
+        for (Future<?> reader : readers) {
+            reader.get(60, TimeUnit.SECONDS); // Fails instead of hanging if a lookup spins on a table that was resized.
+        }
+        pool.shutdown();
+        assertEquals("Expense 49999", manager.getExpenseById(50_000).getName());
+    }
+
+    @Test
+    public void testLargeCategoryScansKeepLedgerOrder() {
+        List<Expense> expenses = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            expenses.add(new Expense("Expense " + i, "01/01/2024", i % 3 == 0 ? "Rent" : "Food", i, "HUF"));
+        }
+        expenseManager.addExpenses(expenses);
+        List<Expense> rent = expenseManager.getExpensesByCategory("Rent");
+        assertEquals(66_667, rent.size());
+        for (int i = 0; i < rent.size(); i++) {
+            assertEquals(i * 3, rent.get(i).getAmount());
+        }
+        // The result is a snapshot, so it neither changes with the ledger nor can be changed itself.
+        expenseManager.addExpense(new Expense("Office", "02/01/2024", "Rent", 1, "HUF"));
+        assertEquals(66_667, rent.size());
+        assertThrows(UnsupportedOperationException.class, () -> rent.remove(0));
+    }
+
     // This test method assumes that you will capture the print stream output.
     @Test
     public void testPrintExpenses() {
@@ -0,0 +1,116 @@
+import com.example.model.Expense;
+import com.example.service.ExpenseService;
+import com.example.service.FixedRateProvider;
+import com.example.service.RateCache;
+import com.example.service.StubRateServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for ExpenseService against the local stub server, so no network or API key is needed.
+public class ExpenseServiceTest {
+    private StubRateServer server;
+    private ExpenseService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Map<String, Double> ratesFromJod = new HashMap<>();
+        ratesFromJod.put("USD", 1.41);
+        ratesFromJod.put("EUR", 1.30);
+        ratesFromJod.put("HUF", 510.0);
+        server = new StubRateServer("JOD", ratesFromJod);
+        service = new ExpenseService(server);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        service.close();
+    }
+
+    @Test
+    public void testConversionIsCached() throws IOException {
+        Expense expense = new Expense("Lunch", "01/04/2023", "Food", 14.1, "USD");
+        assertEquals(10.0, service.displayExpenseAs(expense, "JOD"), 1e-9);
+        assertEquals(10.0, service.displayExpenseAs(expense, "JOD"), 1e-9);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testRateTableServesEveryPairFromOneRequest() throws IOException {
+        service.useRateTable("JOD", new String[]{"JOD", "USD", "EUR", "HUF"});
+        assertEquals(1.30 / 1.41, service.getConversionRate("USD", "EUR"), 1e-9);
+        assertEquals(510.0 / 1.30, service.getConversionRate("EUR", "HUF"), 1e-9);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testConcurrentLookupsOfSamePairAreCoalesced() throws IOException {
+        server.setLatency(Duration.ofMillis(200));
+        List<Expense> expenses = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            expenses.add(new Expense("Coffee", "01/04/2023", "Food", 1.41, "USD"));
+        }
+        List<Double> converted = ExpenseService.await(service.displayExpensesAsAsync(expenses, "JOD"));
+        assertEquals(50, converted.size());
+        assertEquals(1.0, converted.get(49), 1e-9);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testFailingUpstreamSurfacesAsIOException() {
+        server.setErrorRate(1.0);
+        assertThrows(IOException.class, () -> service.getConversionRate("USD", "JOD"));
+        assertEquals(0, service.getRateCache().size()); // Failures are not cached.
+    }
+
+    @Test
+    public void testWaitingForASlowRateCanBeCancelled() throws Exception {
+        server.setLatency(Duration.ofSeconds(5));
+        Thread caller = Thread.currentThread();
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            caller.interrupt(); // Like SwingWorker.cancel(true) on a stale totals calculation.
+        }).start();
+        long start = System.nanoTime();
+        assertThrows(java.io.InterruptedIOException.class, () -> ExpenseService.await(service.getConversionRateAsync("USD", "JOD")));
+        assertTrue(Thread.interrupted()); // The interrupt is kept for the caller, and cleared here.
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+    }
+
+    @Test
+    public void testClosingFailsQueuedLookups() throws Exception {
+        server.setLatency(Duration.ofSeconds(5));
+        ExpenseService singleLookup = new ExpenseService(server, new RateCache(), 1);
+        CompletableFuture<Double> running = singleLookup.getConversionRateAsync("USD", "JOD");
+        CompletableFuture<Double> queued = singleLookup.getConversionRateAsync("EUR", "JOD"); // Waits behind the first one.
+        long start = System.nanoTime();
+        singleLookup.close();
+        assertThrows(IOException.class, () -> ExpenseService.await(running));
+        assertThrows(IOException.class, () -> ExpenseService.await(queued));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+    }
+
+    @Test
+    public void testFixedRateProvider() throws IOException {
+        Map<String, Double> ratesFromJod = new HashMap<>();
+        ratesFromJod.put("USD", 1.41);
+        FixedRateProvider provider = new FixedRateProvider("JOD", ratesFromJod);
+        ExpenseService fixedService = new ExpenseService(provider);
+        assertEquals(1 / 1.41, fixedService.getConversionRate("USD", "JOD"), 1e-9);
+        assertEquals(0, fixedService.getConversionRate("USD", "GBP")); // Unknown pairs convert to 0, as before.
+        fixedService.close();
+    }
+}
@@ -0,0 +1,96 @@
+import com.example.model.Expense;
+import com.example.model.ExpenseStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for the column-oriented expense store.
+public class ExpenseStoreTest {
+    private ExpenseStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new ExpenseStore();
+        store.add(new Expense("Lunch", "26/11/2023", "Food", 6200, "HUF"));
+        store.add(new Expense("Bus Ticket", "24/11/2023", "Transportation", 3500, "HUF"));
+        store.add(new Expense("Lunch", "11/10/2023", "food", 12.5, "EUR"));
+    }
+
+    @Test
+    public void testRowsRoundTrip() {
+        assertEquals(3, store.size());
+        assertEquals(new Expense("Bus Ticket", "24/11/2023", "Transportation", 3500, "HUF"), store.get(1));
+        assertEquals("Food", store.get(2).getCategory()); // Categories are stored as ordinals, so they come back capitalised.
+    }
+
+    @Test
+    public void testDictionariesAreShared() {
+        assertEquals(2, store.getCurrencyCount());
+        assertEquals(store.getName(0), store.getName(2));
+        assertEquals(store.getCurrencyId(0), store.getCurrencyId(1));
+    }
+
+    @Test
+    public void testRemoveKeepsOrder() {
+        long busId = store.getId(1);
+        long lastId = store.getId(2);
+        store.remove(0);
+        assertEquals(2, store.size());
+        assertEquals("Bus Ticket", store.getName(0)); // The later rows moved up, in the order they were added.
+        assertEquals("EUR", store.getCurrency(1));
+        assertEquals(0, store.rowOf(busId));
+        assertEquals(1, store.rowOf(lastId));
+        store.remove(1); // Nothing moves when the last row is removed.
+        assertEquals(1, store.size());
+        assertEquals(-1, store.rowOf(lastId));
+    }
+
+    @Test
+    public void testRemoveRowsKeepsOrder() {
+        store.add(new Expense("Coffee", "20/11/2023", "Food", 600, "HUF"));
+        long busId = store.getId(1);
+        long coffeeId = store.getId(3);
+        BitSet rows = new BitSet();
+        rows.set(0);
+        rows.set(2);
+        assertEquals(2, store.removeRows(rows));
+        assertEquals(List.of("Bus Ticket", "Coffee"), List.of(store.getName(0), store.getName(1)));
+        assertEquals(0, store.rowOf(busId));
+        assertEquals(1, store.rowOf(coffeeId));
+    }
+
+    @Test
+    public void testIdsAreStable() {
+        long busId = store.getId(1);
+        assertEquals(busId, store.get(1).getId());
+        store.remove(0);
+        store.add(new Expense("Cheese", "11/10/2023", "Groceries", 4540, "HUF"));
+        assertEquals(0, store.rowOf(busId)); // Moved up a row, with the same id.
+        assertTrue(store.getId(2) > busId); // Ids of removed rows are not handed out again.
+        assertEquals(-1, store.rowOf(12345));
+    }
+
+    @Test
+    public void testIndexOfAndListView() {
+        List<Expense> view = store.asList();
+        assertEquals(1, view.indexOf(new Expense("Bus Ticket", "24/11/2023", "Transportation", 3500, "HUF")));
+        assertFalse(view.contains(new Expense("Bus Ticket", "24/11/2023", "Transportation", 3501, "HUF")));
+        store.add(new Expense("Cheese", "11/10/2023", "Groceries", 4540, "HUF"));
+        assertEquals(4, view.size()); // The view follows the store.
+        assertThrows(UnsupportedOperationException.class, () -> view.add(store.get(0)));
+    }
+
+    @Test
+    public void testGrowsPastInitialCapacity() {
+        for (int i = 0; i < 1000; i++) {
+            store.add(new Expense("Coffee " + i, "01/01/2024", "Food", i, "USD"));
+        }
+        assertEquals(1003, store.size());
+        assertEquals(999.0, store.getAmount(1002));
+        assertEquals(ExpenseStore.toEpochDay("01/01/2024"), store.getEpochDay(1002));
+    }
+}
@@ -0,0 +1,82 @@
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.service.ExpenseService;
+import com.example.utils.ExpenseFileHandler;
+import com.example.view.ExpenseTableModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.TableRowSorter;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for the table model that reads straight from the ledger.
+public class ExpenseTableModelTest {
+    private ExpenseManager manager;
+    private ExpenseTableModel model;
+    private final List<String> events = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        manager = new ExpenseManager(new ExpenseService(), new ExpenseFileHandler());
+        manager.addExpense(new Expense("Dinner", "01/10/2023", "Food", 9000, "HUF"));
+        manager.addExpense(new Expense("Rent", "02/11/2023", "Rent", 150000, "HUF"));
+        manager.addExpense(new Expense("Bus Ticket", "03/10/2023", "Transportation", 350, "HUF"));
+        model = new ExpenseTableModel(manager);
+        model.showAll();
+        model.addTableModelListener(e -> events.add(describe(e)));
+    }
+
+    private static String describe(TableModelEvent e) {
+        String type = e.getType() == TableModelEvent.INSERT ? "insert" : e.getType() == TableModelEvent.DELETE ? "delete" : "update";
+        return type + " " + e.getFirstRow() + "-" + e.getLastRow();
+    }
+
+    @Test
+    public void testReadsCellsFromTheLedger() {
+        assertEquals(3, model.getRowCount());
+        assertEquals("Rent", model.getValueAt(1, 0));
+        assertEquals("02/11/2023", model.getValueAt(1, 1));
+        assertEquals(150000.0, model.getValueAt(1, 3));
+
+        // Removing the first expense moves the others up, so they keep the order they were added in.
+        manager.removeById(manager.getExpenseAt(0).getId());
+        model.expenseRemoved(0);
+        assertEquals(List.of("delete 0-0"), events);
+        assertEquals(2, model.getRowCount());
+        assertEquals("Rent", model.getValueAt(0, 0));
+        assertEquals("Bus Ticket", model.getValueAt(1, 0));
+    }
+
+    @Test
+    public void testFiltersByMonthAndCategory() {
+        TableRowSorter<ExpenseTableModel> sorter = new TableRowSorter<>(model);
+        sorter.setSortsOnUpdates(true);
+        new JTable(model).setRowSorter(sorter); // The table passes the events of the model on to the sorter.
+        sorter.setRowFilter(model.createFilter(YearMonth.of(2023, 10), null));
+        assertEquals(2, sorter.getViewRowCount());
+        assertEquals(2, sorter.convertRowIndexToModel(1));
+
+        sorter.setRowFilter(model.createFilter(YearMonth.of(2023, 10), "Food"));
+        assertEquals(1, sorter.getViewRowCount());
+        sorter.setRowFilter(model.createFilter(null, "Rent"));
+        assertEquals(1, sorter.convertRowIndexToModel(0));
+
+        // Rows that are added or edited are filtered as they change, without filtering the whole table again.
+        sorter.setRowFilter(model.createFilter(YearMonth.of(2023, 10), null));
+        Expense coffee = new Expense("Coffee", "04/10/2023", "Food", 800, "HUF");
+        manager.addExpense(coffee);
+        model.expenseAdded(coffee);
+        assertEquals(3, sorter.getViewRowCount());
+        Expense moved = new Expense("Dinner", "01/11/2023", "Food", 9000, "HUF");
+        manager.replaceById(manager.getExpenseAt(0).getId(), moved);
+        model.expenseUpdated(0, moved);
+        assertEquals(2, sorter.getViewRowCount());
+        assertEquals(List.of("insert 3-3", "update 0-0"), events);
+    }
+}
@@ -0,0 +1,76 @@
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.service.ExpenseService;
+import com.example.service.FixedRateProvider;
+import com.example.utils.ExpenseFileHandler;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests that conversions, aggregations and file I/O show up in a flight recording.
+public class FlightRecorderEventsTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testEventsAreRecorded() throws Exception {
+        ExpenseManager manager = new ExpenseManager(new ExpenseService(new FixedRateProvider("JOD", Map.of("HUF", 400.0))),
+                new ExpenseFileHandler(directory.resolve("expenses.ledger").toString()));
+        manager.addExpense(new Expense("Dinner", "01/10/2023", "Food", 9000, "HUF"));
+        manager.addExpense(new Expense("Rent", "02/11/2023", "Rent", 150000, "HUF"));
+
+        Path dump = directory.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.example.RateFetch");
+            recording.enable("com.example.Aggregation");
+            recording.enable("com.example.LedgerIo");
+            recording.start();
+            manager.saveExpenses();
+            manager.calculateTotalExpensesByCategory(YearMonth.of(2023, 10));
+            // Called directly, since a second totals call may still share the lookup of the first one.
+            manager.getService().getConversionRate("HUF", "JOD"); // The rate comes from the cache now.
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        RecordedEvent save = only(events, "com.example.LedgerIo");
+        assertEquals("save", save.getString("operation"));
+        assertEquals(2, save.getInt("records"));
+        assertTrue(save.getLong("fileSize") > 0);
+
+        List<RecordedEvent> aggregations = all(events, "com.example.Aggregation");
+        assertEquals(1, aggregations.size());
+        assertEquals("monthTotals", aggregations.get(0).getString("operation"));
+        assertEquals("2023-10", aggregations.get(0).getString("month"));
+        assertEquals(2, aggregations.get(0).getInt("ledgerRows"));
+        assertEquals(1, aggregations.get(0).getInt("currencies"));
+
+        List<RecordedEvent> fetches = all(events, "com.example.RateFetch");
+        assertEquals(2, fetches.size());
+        assertEquals("HUF", fetches.get(0).getString("sourceCurrency"));
+        assertEquals("JOD", fetches.get(0).getString("targetCurrency"));
+        assertEquals(List.of(false, true), fetches.stream().map(e -> e.getBoolean("cacheHit")).collect(Collectors.toList()));
+    }
+
+    private static List<RecordedEvent> all(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name))
+                .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime())).collect(Collectors.toList());
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = all(events, name);
+        assertEquals(1, matching.size());
+        return matching.get(0);
+    }
+}
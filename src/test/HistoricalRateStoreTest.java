@@ -0,0 +1,111 @@
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.service.ExpenseService;
+import com.example.service.FixedRateProvider;
+import com.example.service.HistoricalRateStore;
+import com.example.utils.ExpenseFileHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for the historical rate store, seeded from a local CSV dump so no API key is needed.
+public class HistoricalRateStoreTest {
+    @TempDir
+    Path tempDir;
+    private Path storeFile;
+    private HistoricalRateStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path csv = tempDir.resolve("rates.csv");
+        Files.write(csv, Arrays.asList(
+                "date,currency,rate",
+                "2023-10-01,USD,1.40",
+                "2023-10-01,HUF,510.0",
+                "2023-11-01,USD,1.42",
+                "2023-11-01,HUF,500.0"));
+        storeFile = tempDir.resolve("rates.dat");
+        store = new HistoricalRateStore(storeFile, "JOD");
+        store.importCsv(csv);
+    }
+
+    @Test
+    public void testLookupUsesMostRecentSnapshot() {
+        assertEquals(1.40, store.getRateFromBase("USD", LocalDate.of(2023, 10, 1).toEpochDay()));
+        assertEquals(1.40, store.getRateFromBase("USD", LocalDate.of(2023, 10, 31).toEpochDay()));
+        assertEquals(1.42, store.getRateFromBase("USD", LocalDate.of(2024, 1, 15).toEpochDay()));
+    }
+
+    @Test
+    public void testNoRateBeforeFirstSnapshot() {
+        assertTrue(Double.isNaN(store.getRateFromBase("USD", LocalDate.of(2023, 9, 30).toEpochDay())));
+        assertTrue(Double.isNaN(store.getRateFromBase("EUR", LocalDate.of(2023, 10, 15).toEpochDay())));
+    }
+
+    @Test
+    public void testCrossRate() {
+        assertEquals(500.0 / 1.42, store.getRate("USD", "HUF", LocalDate.of(2023, 11, 2)), 1e-9);
+        assertEquals(1 / 510.0, store.getRate("HUF", "JOD", LocalDate.of(2023, 10, 20)), 1e-12);
+    }
+
+    @Test
+    public void testStoreIsPersisted() throws IOException {
+        HistoricalRateStore reopened = new HistoricalRateStore(storeFile, "EUR");
+        assertEquals("JOD", reopened.getBaseCurrency()); // The base of an existing file wins.
+        assertEquals(4, reopened.size());
+        assertEquals(500.0, reopened.getRateFromBase("HUF", LocalDate.of(2023, 11, 1).toEpochDay()));
+    }
+
+    @Test
+    public void testServiceConvertsWithRateOfExpenseDate() throws IOException {
+        ExpenseService service = new ExpenseService();
+        service.setHistoricalRateStore(store);
+        Expense expense = new Expense("Lunch", "15/10/2023", "Food", 5100, "HUF");
+        assertEquals(10.0, service.displayExpenseAs(expense, "JOD"), 1e-9); // Offline, no API key needed.
+    }
+
+    @Test
+    public void testTotalsStayRightWhenRatesAreRecordedAfterAnExpense() throws IOException {
+        HistoricalRateStore emptyStore = new HistoricalRateStore(tempDir.resolve("later.dat"), "JOD");
+        ExpenseService service = new ExpenseService(new FixedRateProvider("JOD", Map.of("USD", 1.0)));
+        service.setHistoricalRateStore(emptyStore);
+        ExpenseManager manager = new ExpenseManager(service, new ExpenseFileHandler());
+        Expense first = new Expense("Dinner", "01/06/2022", "Food", 100, "USD");
+        manager.addExpense(first);
+        manager.addExpense(new Expense("Lunch", "01/06/2022", "Food", 100, "USD"));
+        // Like the snapshot recorded by a rate table refresh: one JOD bought two dollars on that day.
+        emptyStore.addSnapshot(LocalDate.of(2022, 6, 1), Map.of("USD", 2.0));
+        manager.removeById(first.getId());
+        // The remaining expense was counted without a stored rate, so it is still converted with today's rate.
+        assertEquals(100.0, manager.calculateTotalExpensesByCategory().get("Food"), 1e-9);
+        assertEquals(100.0, manager.calculateTotalExpensesByCategory(YearMonth.of(2022, 6)).get("Food"), 1e-9);
+    }
+
+    @Test
+    public void testCodesThatCannotBeStoredHaveNoRate() throws IOException {
+        store.addSnapshot(LocalDate.of(2023, 12, 1), Map.of("USD", 1.5, "€UR", 1.2, "DOLLAR", 1.0));
+        assertEquals(1.5, store.getRateFromBase("USD", LocalDate.of(2023, 12, 1).toEpochDay()), 1e-9);
+        assertTrue(Double.isNaN(store.getRateFromBase("€UR", LocalDate.of(2023, 12, 1).toEpochDay())));
+        assertTrue(Double.isNaN(store.getRate("DOLLAR", "JOD", LocalDate.of(2023, 12, 1))));
+
+        ExpenseService service = new ExpenseService(new FixedRateProvider("JOD", Map.of("USD", 1.0, "€UR", 1.0)));
+        service.setHistoricalRateStore(store);
+        ExpenseManager manager = new ExpenseManager(service, new ExpenseFileHandler());
+        assertTrue(manager.addExpense(new Expense("Dinner", "01/12/2023", "Food", 10, "€UR")));
+        assertThrows(RuntimeException.class, () -> manager.addExpense(new Expense("Lunch", "2023-12-01", "Food", 10, "USD")));
+        // The invalid expense was rejected before the ledger or its totals changed.
+        assertEquals(1, manager.getAllExpenses().size());
+        assertEquals(10.0, manager.calculateTotalExpensesByCategory().get("Food"), 1e-9);
+        assertEquals(10.0, manager.calculateTotalExpensesByCategory(YearMonth.of(2023, 12)).get("Food"), 1e-9);
+    }
+}
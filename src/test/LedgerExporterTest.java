@@ -0,0 +1,130 @@
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.service.ExpenseService;
+import com.example.utils.CsvImporter;
+import com.example.utils.ExpenseFileHandler;
+import com.example.utils.LedgerExporter;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for the streaming CSV and JSON export.
+public class LedgerExporterTest {
+    @TempDir
+    Path directory;
+
+    private ExpenseManager createManager() {
+        ExpenseManager manager = new ExpenseManager(new ExpenseService(), new ExpenseFileHandler());
+        List<Expense> expenses = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            expenses.add(new Expense(i % 10 == 0 ? "Dinner, \"Chez Nous\"" : "Bus Ticket", String.format("%02d/%02d/2023", i % 28 + 1, i % 12 + 1),
+                    i % 2 == 0 ? "Food" : "Transportation", i + 0.5, i % 3 == 0 ? "EUR" : "HUF"));
+        }
+        manager.addExpenses(expenses);
+        return manager;
+    }
+
+    @Test
+    public void testCsvCanBeImportedAgain() throws IOException {
+        ExpenseManager manager = createManager();
+        Path file = directory.resolve("expenses.csv");
+        List<Long> progress = new ArrayList<>();
+        long rows = new LedgerExporter().export(manager, LedgerExporter.Slice.all(), LedgerExporter.Format.CSV, file, false,
+                (written, total) -> progress.add(written * 10000 + total));
+        assertEquals(1000, rows);
+        assertEquals(1000 * 10000 + 1000, progress.get(progress.size() - 1));
+
+        CsvImporter.Result result = new CsvImporter().parse(file);
+        assertEquals(0, result.getErrorCount());
+        assertEquals(manager.getAllExpenses(), result.getExpenses());
+    }
+
+    @Test
+    public void testExportsMonthAndCategorySlices() throws IOException {
+        ExpenseManager manager = createManager();
+        Path file = directory.resolve("march.json.gz");
+        long rows = new LedgerExporter().export(manager, LedgerExporter.Slice.month(YearMonth.of(2023, 3)), LedgerExporter.Format.JSON, file, false, null);
+        String json;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        JSONArray array = new JSONArray(json);
+        assertEquals(manager.getExpensesForMonth(YearMonth.of(2023, 3)).size(), rows);
+        assertEquals(rows, array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject object = array.getJSONObject(i);
+            Expense expense = manager.getExpenseById(object.getLong("id"));
+            assertEquals(expense.getName(), object.getString("name"));
+            assertEquals(expense.getDate(), object.getString("date"));
+            assertEquals(expense.getAmount(), object.getDouble("amount"));
+            assertTrue(object.getString("date").endsWith("/03/2023"));
+        }
+
+        Path food = directory.resolve("food.csv");
+        assertEquals(500, new LedgerExporter().export(manager, LedgerExporter.Slice.category("Food"), LedgerExporter.Format.CSV, food, false, null));
+        assertTrue(new CsvImporter().parse(food).getExpenses().stream().allMatch(e -> e.getCategory().equals("Food")));
+        assertEquals(List.of(food, file), listFiles()); // No temporary files are left behind.
+    }
+
+    @Test
+    public void testLedgerCanBeEditedDuringAnExport() throws Exception {
+        ExpenseManager manager = createManager();
+        List<Boolean> added = new ArrayList<>();
+        long rows = new LedgerExporter().export(manager, LedgerExporter.Slice.all(), LedgerExporter.Format.CSV,
+                directory.resolve("expenses.csv"), false, (written, total) -> {
+                    // An edit from the UI while the file is still being written must not have to wait for the export.
+                    Thread editor = new Thread(() -> manager.addExpense(new Expense("Taxi", "01/01/2023", "Transportation", 12, "EUR")));
+                    editor.start();
+                    try {
+                        editor.join(5000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    added.add(!editor.isAlive());
+                });
+        assertEquals(List.of(true), added);
+        assertEquals(1000, rows); // The edit came after the last page was read, so it is not in the file.
+        assertEquals(1001, manager.getAllExpenses().size());
+    }
+
+    @Test
+    public void testLargeLedgerIsExportedPageByPage() throws IOException {
+        ExpenseManager manager = new ExpenseManager(new ExpenseService(), new ExpenseFileHandler());
+        List<Expense> expenses = new ArrayList<>();
+        for (int i = 0; i < 40_000; i++) { // More rows than fit in one page.
+            expenses.add(new Expense("Coffee " + i, "12/10/2023", i % 2 == 0 ? "Food" : "Other", i, "HUF"));
+        }
+        manager.addExpenses(expenses);
+        List<long[]> progress = new ArrayList<>();
+        Path file = directory.resolve("food.csv");
+        long rows = new LedgerExporter().export(manager, LedgerExporter.Slice.category("Food"), LedgerExporter.Format.CSV, file, false,
+                (written, total) -> progress.add(new long[]{written, total}));
+        assertEquals(20_000, rows);
+        assertTrue(progress.size() > 1); // Reported after every page, and once at the end.
+        assertArrayEquals(new long[]{20_000, 20_000}, progress.get(progress.size() - 1));
+        List<Expense> exported = new CsvImporter().parse(file).getExpenses();
+        assertEquals(20_000, exported.size());
+        for (int i = 0; i < exported.size(); i++) {
+            assertEquals("Coffee " + 2 * i, exported.get(i).getName()); // Every row once, in ledger order.
+        }
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(java.util.stream.Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.model.ExpenseStore;
+import com.example.service.ExpenseService;
+import com.example.utils.ExpenseFileHandler;
+import com.example.utils.LedgerJournal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for saving changes through the journal and recovering them on load.
+public class LedgerJournalTest {
+    @TempDir
+    Path directory;
+    private final ExpenseService expenseService = new ExpenseService();
+    private String fileName;
+    private ExpenseManager manager;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileName = directory.resolve("expenses.ledger").toString();
+        manager = new ExpenseManager(expenseService, new ExpenseFileHandler(fileName));
+        manager.addExpense(new Expense("Lunch", "26/11/2023", "Food", 6200, "HUF"));
+        manager.addExpense(new Expense("Bus Ticket", "24/11/2023", "Transportation", 3500, "HUF"));
+        manager.saveExpenses(); // The first save writes a snapshot.
+    }
+
+    private ExpenseManager reload() throws IOException, ClassNotFoundException {
+        ExpenseManager loaded = new ExpenseManager(expenseService, new ExpenseFileHandler(fileName));
+        loaded.loadExpenses();
+        return loaded;
+    }
+
+    @Test
+    public void testSaveOnlyAppendsChanges() throws IOException, ClassNotFoundException {
+        byte[] snapshot = Files.readAllBytes(Path.of(fileName));
+        long journalSize = Files.size(Path.of(fileName + ".journal"));
+
+        manager.addExpense(new Expense("Cheese", "11/10/2023", "Groceries", 4540, "HUF"));
+        long busId = manager.getAllExpenses().get(1).getId();
+        manager.replaceById(busId, new Expense("Bus Pass", "24/11/2023", "Transportation", 9500, "HUF"));
+        manager.removeById(manager.getAllExpenses().get(0).getId());
+        manager.saveExpenses();
+
+        assertArrayEquals(snapshot, Files.readAllBytes(Path.of(fileName))); // The snapshot was not rewritten.
+        assertTrue(Files.size(Path.of(fileName + ".journal")) > journalSize);
+
+        ExpenseManager loaded = reload();
+        assertEquals(2, loaded.getAllExpenses().size());
+        assertEquals("Bus Pass", loaded.getExpenseById(busId).getName());
+        assertEquals(1, loaded.getExpenseCount(java.time.YearMonth.of(2023, 10)));
+    }
+
+    @Test
+    public void testRemovalKeepsTheOrderOfTheLedger() throws IOException, ClassNotFoundException {
+        manager.addExpense(new Expense("Cheese", "11/10/2023", "Groceries", 4540, "HUF"));
+        manager.addExpense(new Expense("Coffee", "12/10/2023", "Food", 600, "HUF"));
+        manager.removeById(manager.getAllExpenses().get(1).getId());
+        manager.saveExpenses();
+        List<String> expected = List.of("Lunch", "Cheese", "Coffee");
+        assertEquals(expected, names(manager));
+        assertEquals(expected, names(reload())); // The journal replays the removal the same way.
+    }
+
+    private static List<String> names(ExpenseManager manager) {
+        List<String> names = new ArrayList<>();
+        for (Expense expense : manager.getAllExpenses()) {
+            names.add(expense.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testUnsavedChangesStayOutOfTheJournal() throws IOException, ClassNotFoundException {
+        Path journalFile = Path.of(fileName + ".journal");
+        long journalSize = Files.size(journalFile);
+        List<Expense> expenses = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) { // Several hundred kilobytes of records.
+            expenses.add(new Expense("Coffee at the station kiosk " + i, "12/10/2023", "Food", 600, "HUF"));
+        }
+        manager.addExpenses(expenses);
+        manager.removeById(manager.getAllExpenses().get(0).getId());
+        assertEquals(journalSize, Files.size(journalFile)); // Nothing is written before the changes are saved.
+        assertEquals(2, reload().getAllExpenses().size());
+
+        manager.saveExpenses();
+        assertEquals(5001, reload().getAllExpenses().size());
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws IOException, ClassNotFoundException {
+        manager.addExpense(new Expense("Cheese", "11/10/2023", "Groceries", 4540, "HUF"));
+        manager.saveExpenses();
+        // A crash in the middle of a write leaves part of a record behind.
+        Files.write(Path.of(fileName + ".journal"), new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        ExpenseManager loaded = reload();
+        assertEquals(3, loaded.getAllExpenses().size());
+        // The torn tail is cut off, so records appended after it are found again.
+        loaded.addExpense(new Expense("Coffee", "12/10/2023", "Food", 600, "HUF"));
+        loaded.saveExpenses();
+        assertEquals(4, reload().getAllExpenses().size());
+    }
+
+    @Test
+    public void testCompactionWritesNewSnapshot() throws IOException, ClassNotFoundException {
+        ExpenseFileHandler handler = new ExpenseFileHandler(fileName);
+        ExpenseManager compacting = new ExpenseManager(expenseService, handler);
+        compacting.loadExpenses();
+        handler.setCompactionThreshold(0);
+        int generation = handler.getJournal().getGeneration();
+
+        compacting.addExpense(new Expense("Cheese", "11/10/2023", "Groceries", 4540, "HUF"));
+        compacting.saveExpenses();
+        LedgerJournal journal = handler.getJournal();
+        assertEquals(generation + 1, journal.getGeneration());
+        assertEquals(0, journal.getUncommittedCount());
+        assertEquals(3, reload().getAllExpenses().size());
+    }
+
+    @Test
+    public void testChangesDuringASnapshotGoToItsJournal() throws IOException, ClassNotFoundException {
+        ExpenseFileHandler handler = new ExpenseFileHandler(fileName);
+        ExpenseManager compacting = new ExpenseManager(expenseService, handler);
+        compacting.loadExpenses();
+        handler.setCompactionThreshold(0);
+        compacting.addExpense(new Expense("Cheese", "11/10/2023", "Groceries", 4540, "HUF"));
+        byte[] oldJournal = Files.readAllBytes(Path.of(fileName + ".journal"));
+
+        // The ledger is captured first; a change made before the snapshot is written is recorded for the new one.
+        ExpenseFileHandler.PendingSave save = handler.prepareSave(compacting.readStore(ExpenseStore::copy));
+        compacting.addExpense(new Expense("Milk", "12/10/2023", "Groceries", 900, "HUF"));
+        assertFalse(handler.getJournal().isStarted());
+        assertArrayEquals(oldJournal, Files.readAllBytes(Path.of(fileName + ".journal"))); // What a crash would find.
+        save.write();
+        assertEquals(3, reload().getAllExpenses().size());
+
+        compacting.saveExpenses();
+        assertEquals("Milk", reload().getAllExpenses().get(3).getName());
+    }
+
+    @Test
+    public void testPagedLoadLetsOtherThreadsIn() throws Exception {
+        for (int i = 0; i < 10000; i++) {
+            manager.addExpense(new Expense("Coffee " + i, "01/01/2024", "Food", i, "USD"));
+        }
+        new ExpenseFileHandler(fileName).saveLedger(manager.readStore(ExpenseStore::copy)); // Three pages, with an empty journal.
+
+        ExpenseManager loading = new ExpenseManager(expenseService, new ExpenseFileHandler(fileName));
+        List<Boolean> loadingSeen = new ArrayList<>();
+        loading.loadExpenses(page -> {
+            try {
+                // Between two pages the lock of the manager is free, but changes are refused until the load is done.
+                loadingSeen.add(CompletableFuture.supplyAsync(loading::isLoading).get(10, TimeUnit.SECONDS));
+                assertThrows(IllegalStateException.class, () -> loading.addExpense(new Expense("Tea", "02/01/2024", "Food", 1, "USD")));
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        assertEquals(List.of(true, true, true), loadingSeen);
+        assertFalse(loading.isLoading());
+        assertTrue(loading.addExpense(new Expense("Tea", "02/01/2024", "Food", 1, "USD")));
+        assertEquals(10003, loading.getAllExpenses().size());
+    }
+
+    @Test
+    public void testPagedLoadAndStreaming() throws IOException, ClassNotFoundException {
+        for (int i = 0; i < 10000; i++) {
+            manager.addExpense(new Expense("Coffee " + i, "01/01/2024", "Food", i, "USD"));
+        }
+        new ExpenseFileHandler(fileName).saveLedger(manager.readStore(ExpenseStore::copy)); // A full snapshot, with an empty journal.
+
+        List<Integer> pageSizes = new ArrayList<>();
+        boolean[] rowsChanged = new boolean[1];
+        ExpenseManager loaded = new ExpenseManager(expenseService, new ExpenseFileHandler(fileName));
+        loaded.loadExpenses(new ExpenseManager.LoadListener() {
+            @Override
+            public void pageLoaded(List<Expense> page) {
+                pageSizes.add(page.size());
+            }
+
+            @Override
+            public void rowsChanged() {
+                rowsChanged[0] = true;
+            }
+        });
+        assertEquals(List.of(4096, 4096, 1810), pageSizes);
+        assertFalse(rowsChanged[0]);
+        assertEquals(10000, loaded.getExpenseCount(java.time.YearMonth.of(2024, 1)));
+
+        try (Stream<Expense> expenses = new ExpenseFileHandler(fileName).streamExpenses()) {
+            assertEquals("Coffee 9999", expenses.reduce((first, second) -> second).orElseThrow().getName());
+        }
+
+        // A change in the journal has to be applied on top of the snapshot.
+        loaded.removeById(loaded.getAllExpenses().get(0).getId());
+        loaded.saveExpenses();
+        ExpenseManager reloaded = new ExpenseManager(expenseService, new ExpenseFileHandler(fileName));
+        reloaded.loadExpenses(new ExpenseManager.LoadListener() {
+            @Override
+            public void pageLoaded(List<Expense> page) {
+            }
+
+            @Override
+            public void rowsChanged() {
+                rowsChanged[0] = true;
+            }
+        });
+        assertTrue(rowsChanged[0]);
+        try (Stream<Expense> expenses = new ExpenseFileHandler(fileName).streamExpenses()) {
+            assertEquals(10001, expenses.count());
+        }
+    }
+
+    @Test
+    public void testStaleJournalIsNotReplayed() throws IOException, ClassNotFoundException {
+        Path journalFile = Path.of(fileName + ".journal");
+        manager.addExpense(new Expense("Cheese", "11/10/2023", "Groceries", 4540, "HUF"));
+        manager.saveExpenses();
+        byte[] oldJournal = Files.readAllBytes(journalFile);
+
+        // A new snapshot, followed by a crash before the old journal was replaced.
+        ExpenseFileHandler handler = new ExpenseFileHandler(fileName);
+        ExpenseManager other = new ExpenseManager(expenseService, handler);
+        other.loadExpenses();
+        other.clearExpenses();
+        handler.saveLedger(other.readStore(ExpenseStore::copy));
+        Files.write(journalFile, oldJournal);
+
+        assertTrue(reload().getAllExpenses().isEmpty());
+    }
+}
@@ -0,0 +1,68 @@
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.service.ExpenseService;
+import com.example.service.FixedRateProvider;
+import com.example.utils.ExpenseFileHandler;
+import com.example.utils.LatencyHistogram;
+import com.example.utils.Metrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for the metrics registry and its latency histograms.
+public class MetricsTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testHistogramPercentilesAreWithinTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500, histogram.getMeanNanos(), 0.001);
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        // Each value is kept to within about 1.6%, and never reported above the maximum.
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 * 0.016);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 * 0.016);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testInstrumentedCodeIsVisibleOverJmx() throws Exception {
+        ExpenseManager manager = new ExpenseManager(new ExpenseService(new FixedRateProvider("JOD", Map.of("HUF", 400.0))),
+                new ExpenseFileHandler(directory.resolve("expenses.ledger").toString()));
+        manager.addExpense(new Expense("Dinner", "01/10/2023", "Food", 9000, "HUF"));
+        long saves = Metrics.getDefault().histogram("ledger.save").getCount();
+        long totals = Metrics.getDefault().histogram("manager.totals").getCount();
+        manager.saveExpenses();
+        manager.calculateTotalExpensesByCategory();
+        assertEquals(saves + 1, Metrics.getDefault().histogram("ledger.save").getCount());
+        assertEquals(totals + 1, Metrics.getDefault().histogram("manager.totals").getCount());
+        assertEquals(1, Metrics.getDefault().gauge("ledger.records").get());
+
+        Metrics.getDefault().registerMBean();
+        Metrics.getDefault().registerMBean(); // Registering twice is harmless.
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        assertTrue(Arrays.stream(server.getMBeanInfo(name).getAttributes()).map(MBeanAttributeInfo::getName)
+                .anyMatch("ledger.save.p99Micros"::equals));
+        assertEquals(saves + 1, server.getAttribute(name, "ledger.save.count"));
+        assertTrue((Double) server.getAttribute(name, "ledger.save.maxMicros") > 0);
+        assertTrue((Long) server.getAttribute(name, "ledger.fileBytes") > 0);
+    }
+}
@@ -0,0 +1,56 @@
+import com.example.service.RateCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for the exchange-rate cache, using a fake clock so expiry can be tested without waiting.
+public class RateCacheTest {
+    private final AtomicLong now = new AtomicLong();
+    private RateCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new RateCache(Duration.ofMinutes(10), 2, now::get);
+    }
+
+    @Test
+    public void testHitAndMissCounters() {
+        assertNull(cache.get("USD", "JOD"));
+        cache.put("USD", "JOD", 0.71);
+        assertEquals(0.71, cache.get("USD", "JOD"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testPairsAreDirectional() {
+        cache.put("USD", "JOD", 0.71);
+        assertNull(cache.get("JOD", "USD"));
+    }
+
+    @Test
+    public void testEntriesExpireAfterTtl() {
+        cache.put("EUR", "JOD", 0.77);
+        now.addAndGet(Duration.ofMinutes(9).toNanos());
+        assertEquals(0.77, cache.get("EUR", "JOD"));
+        now.addAndGet(Duration.ofMinutes(1).toNanos());
+        assertNull(cache.get("EUR", "JOD"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPairIsEvicted() {
+        cache.put("USD", "JOD", 0.71);
+        cache.put("EUR", "JOD", 0.77);
+        cache.get("USD", "JOD"); // USD/JOD is now the most recently used entry.
+        cache.put("HUF", "JOD", 0.002);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get("EUR", "JOD"));
+        assertNotNull(cache.get("USD", "JOD"));
+    }
+}
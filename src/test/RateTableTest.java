@@ -0,0 +1,42 @@
+import com.example.service.RateTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for deriving cross rates from a single base-currency table.
+public class RateTableTest {
+    private final String[] currencies = {"JOD", "USD", "EUR", "HUF"};
+
+    private RateTable createTable() {
+        Map<String, Double> ratesFromJod = new HashMap<>();
+        ratesFromJod.put("USD", 1.41);
+        ratesFromJod.put("EUR", 1.30);
+        return RateTable.fromBaseRates("JOD", currencies, ratesFromJod, 0);
+    }
+
+    @Test
+    public void testRatesAgainstBase() {
+        RateTable table = createTable();
+        assertEquals(1.41, table.getRate("JOD", "USD"), 1e-9);
+        assertEquals(1 / 1.41, table.getRate("USD", "JOD"), 1e-9);
+        assertEquals(1.0, table.getRate("EUR", "EUR"));
+    }
+
+    @Test
+    public void testCrossRate() {
+        RateTable table = createTable();
+        assertEquals(1.30 / 1.41, table.getRate("USD", "EUR"), 1e-9);
+        assertEquals(table.getRate("USD", "EUR"), table.getRate(table.ordinalOf("USD"), table.ordinalOf("EUR")));
+    }
+
+    @Test
+    public void testMissingCurrencyIsNaN() {
+        RateTable table = createTable();
+        assertTrue(Double.isNaN(table.getRate("HUF", "JOD")));
+        assertTrue(Double.isNaN(table.getRate("USD", "GBP")));
+        assertEquals(-1, table.ordinalOf("GBP"));
+    }
+}
@@ -0,0 +1,44 @@
+import com.example.view.RefreshScheduler;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for the coalescing of GUI refreshes.
+public class RefreshSchedulerTest {
+    @Test
+    public void testBurstOfChangesRefreshesOnce() throws Exception {
+        List<Integer> refreshes = new ArrayList<>();
+        CountDownLatch refreshed = new CountDownLatch(1);
+        RefreshScheduler scheduler = new RefreshScheduler(parts -> {
+            assertTrue(SwingUtilities.isEventDispatchThread());
+            refreshes.add(parts);
+            refreshed.countDown();
+        });
+        // Like a bulk delete marking the same parts for every row. It runs on the event thread, like the controller's
+        // deletes, so the timer cannot fire in the middle of it however slow the machine is.
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < 10000; i++) {
+                scheduler.markDirty(RefreshScheduler.MONTHS);
+                scheduler.markDirty(RefreshScheduler.TOTALS);
+            }
+            scheduler.markDirty(RefreshScheduler.TABLE);
+        });
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        Thread.sleep(3 * RefreshScheduler.FRAME_MILLIS); // Time for a second refresh, if one was wrongly scheduled.
+        SwingUtilities.invokeAndWait(() -> {
+            assertEquals(List.of(RefreshScheduler.MONTHS | RefreshScheduler.TOTALS | RefreshScheduler.TABLE), refreshes);
+            assertEquals(1, scheduler.getRefreshCount());
+        });
+
+        // A change after the refresh schedules a new one, and flush() runs it right away.
+        scheduler.markDirty(RefreshScheduler.MONTHS);
+        SwingUtilities.invokeAndWait(scheduler::flush);
+        SwingUtilities.invokeAndWait(() -> assertEquals(List.of(7, RefreshScheduler.MONTHS), refreshes));
+    }
+}
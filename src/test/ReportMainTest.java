@@ -0,0 +1,99 @@
+import com.example.model.Expense;
+import com.example.model.ExpenseManager;
+import com.example.service.ExpenseService;
+import com.example.service.HistoricalRateStore;
+import com.example.service.HttpRateProvider;
+import com.example.utils.ExpenseFileHandler;
+import com.example.cli.ReportMain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Tests for the headless reports.
+public class ReportMainTest {
+    @TempDir
+    Path directory;
+    private Path ledger;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        ledger = directory.resolve("expenses.ledger");
+        ExpenseManager manager = new ExpenseManager(new ExpenseService(), new ExpenseFileHandler(ledger.toString()));
+        // In the base currency, so the totals need no exchange rates.
+        manager.addExpense(new Expense("Lunch", "26/11/2023", "Food", 6.5, "JOD"));
+        manager.addExpense(new Expense("Rent", "01/11/2023", "Rent", 300, "JOD"));
+        manager.addExpense(new Expense("Cheese", "11/10/2023", "Groceries", 4.25, "JOD"));
+        manager.saveExpenses();
+    }
+
+    private int run(String... args) {
+        return ReportMain.run(args, new PrintStream(out, true), new PrintStream(err, true));
+    }
+
+    @Test
+    public void testSummaryAndTotals() throws IOException {
+        assertEquals(0, run("--file", ledger.toString()));
+        assertTrue(out.toString().contains("Expenses: 3"));
+        assertTrue(out.toString().contains("2023-10 to 2023-11"));
+
+        out.reset();
+        assertEquals(0, run("--file", ledger.toString(), "totals", "2023-11"));
+        assertTrue(out.toString().contains("306.50 JOD"), out.toString());
+
+        // Reports never write to the ledger or its journal.
+        List<Path> files = List.of(ledger, Path.of(ledger + ".journal"));
+        long[] sizes = {Files.size(files.get(0)), Files.size(files.get(1))};
+        assertEquals(0, run("--file", ledger.toString(), "months"));
+        assertEquals(sizes[0], Files.size(files.get(0)));
+        assertEquals(sizes[1], Files.size(files.get(1)));
+    }
+
+    @Test
+    public void testExportAndErrors() throws IOException {
+        Path csv = directory.resolve("food.csv");
+        assertEquals(0, run("--file", ledger.toString(), "export", csv.toString(), "--category", "Food"));
+        assertEquals(List.of("Name,Date,Category,Amount,Currency", "Lunch,26/11/2023,Food,6.5,JOD"), Files.readAllLines(csv));
+
+        assertEquals(1, run("--file", ledger.toString(), "forecast"));
+        assertTrue(err.toString().contains("Unknown command: forecast"));
+        assertEquals(1, run("--file"));
+        assertEquals(2, run("--file", directory.resolve("missing.ledger").toString()));
+    }
+
+    @Test
+    public void testWithoutAnApiKeyOnlyStoredRatesAreUsed() throws IOException, ClassNotFoundException {
+        assumeTrue(System.getenv(HttpRateProvider.API_KEY_VARIABLE) == null);
+        ExpenseManager manager = new ExpenseManager(new ExpenseService(), new ExpenseFileHandler(ledger.toString()));
+        manager.readExpenses();
+        manager.addExpense(new Expense("Book", "20/11/2023", "Other", 14.1, "USD"));
+        manager.saveExpenses();
+
+        // No rate for USD at all: the report fails without going online and says how to pass rates.
+        assertEquals(2, run("--file", ledger.toString(), "totals"));
+        assertTrue(err.toString().contains("No stored exchange rate from USD to JOD"), err.toString());
+        assertTrue(err.toString().contains("--rates"), err.toString());
+
+        // The only snapshot is newer than the expense, so it is converted with the latest stored rate instead.
+        Path rates = directory.resolve("exchange_rates.dat");
+        try (HistoricalRateStore store = new HistoricalRateStore(rates, ExpenseManager.BASE_CURRENCY)) {
+            store.addSnapshot(LocalDate.of(2023, 12, 1), Map.of("USD", 1.41));
+        }
+        out.reset();
+        assertEquals(0, run("--file", ledger.toString(), "--rates", rates.toString(), "totals", "2023-11"));
+        assertTrue(out.toString().contains("316.50 JOD"), out.toString());
+    }
+}